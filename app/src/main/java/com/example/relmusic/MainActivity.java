@@ -1,11 +1,7 @@
 package com.example.relmusic;
 
 import android.animation.ObjectAnimator;
-import android.annotation.SuppressLint;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -28,17 +24,19 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowCompat;
-import androidx.fragment.app.Fragment;
 import androidx.navigation.NavController;
-import androidx.navigation.NavDestination;
 import androidx.navigation.Navigation;
 import androidx.navigation.ui.NavigationUI;
 
 import com.bumptech.glide.Glide;
+import com.example.relmusic.data.LibraryRepository;
 import com.example.relmusic.databinding.ActivityMainBinding;
+import com.example.relmusic.ui.AlbumArt;
+import com.example.relmusic.ui.AlbumArtOptions;
 import com.example.relmusic.ui.music.MusicItem;
 import com.example.relmusic.ui.pages.nowplaying.NowPlayingActivity;
 import com.example.relmusic.service.MusicService;
+import com.example.relmusic.service.PlaybackStateBus;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -67,46 +65,11 @@ public class MainActivity extends AppCompatActivity {
     private MusicItem currentPlayingItem;
     private boolean isPlaying = false;
     private boolean isMiniPlayerVisible = false;
-    private boolean isReceiverRegistered = false;
     private boolean isActivityDestroyed = false;
 
     // Handlers
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    private final BroadcastReceiver musicUpdateReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (isActivityDestroyed || isFinishing() || isDestroyed()) {
-                return;
-            }
-
-            try {
-                String action = intent.getAction();
-                if (action == null) return;
-
-                switch (action) {
-                    case MusicService.ACTION_MUSIC_UPDATED:
-                        MusicItem musicItem = intent.getParcelableExtra("music_item");
-                        boolean playing = intent.getBooleanExtra("is_playing", false);
-                        if (musicItem != null) {
-                            showMiniPlayer(musicItem);
-                            updateMiniPlayerState(playing);
-                        }
-                        break;
-                    case MusicService.ACTION_PLAYBACK_STATE_CHANGED:
-                        boolean playingState = intent.getBooleanExtra("is_playing", false);
-                        updateMiniPlayerState(playingState);
-                        break;
-                    case MusicService.ACTION_HIDE_MINI_PLAYER:
-                        hideMiniPlayer();
-                        break;
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling broadcast: " + e.getMessage(), e);
-            }
-        }
-    };
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -132,7 +95,7 @@ public class MainActivity extends AppCompatActivity {
             setupNavigation();
             setupToolbarActions();
             setupSearchButton();
-            registerMusicUpdateReceiver();
+            observePlaybackState();
 
         } catch (Exception e) {
             Log.e(TAG, "Error in onCreate: " + e.getMessage(), e);
@@ -217,43 +180,23 @@ public class MainActivity extends AppCompatActivity {
             // Animate refresh button
             animateRefreshButton(refreshButton);
 
-            // Clear all caches
-            clearAllFragmentCaches();
+            LibraryRepository libraryRepository = LibraryRepository.getInstance(this);
+            int previousCount = libraryRepository.getCurrentLibrary().getSongCount();
 
-            NavController navController = Navigation.findNavController(this, R.id.nav_host_fragment_activity_main);
-            NavDestination currentDestination = navController.getCurrentDestination();
+            libraryRepository.refresh((success, library) -> {
+                if (isActivityDestroyed) return;
 
-            if (currentDestination == null) {
-                refreshAllFragmentsInBackground();
-                showRefreshToast("Refreshing all libraries...");
-                return;
-            }
+                if (!success) {
+                    showRefreshToast("Error loading music files");
+                } else if (previousCount > 0 && library.getSongCount() == previousCount) {
+                    showRefreshToast("Music library is up to date (" + previousCount + " songs)");
+                }
+            });
 
-            int destinationId = currentDestination.getId();
-
-            // Refresh based on current destination
-            if (destinationId == R.id.navigation_music) {
-                refreshFragmentByType(com.example.relmusic.ui.music.MusicFragment.class);
-                refreshFragmentInBackground(com.example.relmusic.ui.album.AlbumFragment.class);
-                refreshFragmentInBackground(com.example.relmusic.ui.artist.ArtistFragment.class);
-                showRefreshToast("Refreshing music, album, and artist library...");
-            } else if (destinationId == R.id.navigation_album) {
-                refreshFragmentByType(com.example.relmusic.ui.album.AlbumFragment.class);
-                refreshFragmentInBackground(com.example.relmusic.ui.music.MusicFragment.class);
-                refreshFragmentInBackground(com.example.relmusic.ui.artist.ArtistFragment.class);
-                showRefreshToast("Refreshing album, music, and artist library...");
-            } else if (destinationId == R.id.navigation_artist) {
-                refreshFragmentByType(com.example.relmusic.ui.artist.ArtistFragment.class);
-                refreshFragmentInBackground(com.example.relmusic.ui.music.MusicFragment.class);
-                refreshFragmentInBackground(com.example.relmusic.ui.album.AlbumFragment.class);
-                showRefreshToast("Refreshing artist, music, and album library...");
-            } else {
-                refreshAllFragmentsInBackground();
-                showRefreshToast("Refreshing all libraries...");
-            }
+            showRefreshToast("Refreshing music, album, and artist library...");
 
         } catch (Exception e) {
-            Log.e(TAG, "Error refreshing fragments: " + e.getMessage(), e);
+            Log.e(TAG, "Error refreshing library: " + e.getMessage(), e);
             showRefreshToast("Error refreshing library");
             resetRefreshButton();
         }
@@ -279,11 +222,6 @@ public class MainActivity extends AppCompatActivity {
         }, REFRESH_COOLDOWN_DURATION);
     }
 
-    private void clearAllFragmentCaches() {
-        com.example.relmusic.ui.album.AlbumFragment.clearCache();
-        com.example.relmusic.ui.artist.ArtistFragment.clearCache();
-    }
-
     private void showRefreshToast(String message) {
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
@@ -296,61 +234,6 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    // Generic method to refresh fragments by type
-    private <T extends Fragment> void refreshFragmentByType(Class<T> fragmentClass) {
-        try {
-            Fragment navHostFragment = getSupportFragmentManager()
-                    .findFragmentById(R.id.nav_host_fragment_activity_main);
-
-            if (navHostFragment != null) {
-                Fragment currentFragment = navHostFragment.getChildFragmentManager()
-                        .getPrimaryNavigationFragment();
-
-                if (currentFragment != null && fragmentClass.isInstance(currentFragment)) {
-                    refreshFragment(currentFragment);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error refreshing fragment by type: " + e.getMessage(), e);
-        }
-    }
-
-    // Generic method to refresh fragments in background
-    private <T extends Fragment> void refreshFragmentInBackground(Class<T> fragmentClass) {
-        try {
-            Fragment navHostFragment = getSupportFragmentManager()
-                    .findFragmentById(R.id.nav_host_fragment_activity_main);
-
-            if (navHostFragment != null) {
-                for (Fragment fragment : navHostFragment.getChildFragmentManager().getFragments()) {
-                    if (fragmentClass.isInstance(fragment)) {
-                        refreshFragment(fragment);
-                        break;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error refreshing fragment in background: " + e.getMessage(), e);
-        }
-    }
-
-    // Centralized fragment refresh method
-    private void refreshFragment(Fragment fragment) {
-        if (fragment instanceof com.example.relmusic.ui.music.MusicFragment) {
-            ((com.example.relmusic.ui.music.MusicFragment) fragment).refreshData();
-        } else if (fragment instanceof com.example.relmusic.ui.album.AlbumFragment) {
-            ((com.example.relmusic.ui.album.AlbumFragment) fragment).refreshData();
-        } else if (fragment instanceof com.example.relmusic.ui.artist.ArtistFragment) {
-            ((com.example.relmusic.ui.artist.ArtistFragment) fragment).refreshData();
-        }
-    }
-
-    private void refreshAllFragmentsInBackground() {
-        refreshFragmentInBackground(com.example.relmusic.ui.music.MusicFragment.class);
-        refreshFragmentInBackground(com.example.relmusic.ui.album.AlbumFragment.class);
-        refreshFragmentInBackground(com.example.relmusic.ui.artist.ArtistFragment.class);
-    }
-
     private void enableEdgeToEdge() {
         try {
             getWindow().setNavigationBarColor(android.graphics.Color.TRANSPARENT);
@@ -379,27 +262,28 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    @SuppressLint("UnspecifiedRegisterReceiverFlag")
-    private void registerMusicUpdateReceiver() {
-        try {
-            if (!isReceiverRegistered && musicUpdateReceiver != null) {
-                IntentFilter filter = new IntentFilter();
-                filter.addAction(MusicService.ACTION_MUSIC_UPDATED);
-                filter.addAction(MusicService.ACTION_PLAYBACK_STATE_CHANGED);
-                filter.addAction(MusicService.ACTION_HIDE_MINI_PLAYER);
-
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
-                    registerReceiver(musicUpdateReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
-                } else {
-                    registerReceiver(musicUpdateReceiver, filter);
+    private void observePlaybackState() {
+        PlaybackStateBus.getState().observe(this, state -> {
+            if (isActivityDestroyed || isFinishing() || isDestroyed()) {
+                return;
+            }
+
+            try {
+                MusicItem song = state.getSong();
+                if (song == null) {
+                    hideMiniPlayer();
+                    return;
                 }
 
-                isReceiverRegistered = true;
+                if (!isMiniPlayerVisible || currentPlayingItem == null
+                        || currentPlayingItem.getId() != song.getId()) {
+                    showMiniPlayer(song);
+                }
+                updateMiniPlayerState(state.isPlaying());
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling playback state: " + e.getMessage(), e);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error registering broadcast receiver: " + e.getMessage(), e);
-            isReceiverRegistered = false;
-        }
+        });
     }
 
     private boolean initializeMiniPlayer() {
@@ -495,9 +379,8 @@ public class MainActivity extends AppCompatActivity {
     private void loadAlbumArt(MusicItem musicItem) {
         try {
             Glide.with(this)
-                    .load(musicItem.getAlbumArtUri())
-                    .placeholder(R.drawable.ic_outline_music_note_24)
-                    .error(R.drawable.ic_outline_music_note_24)
+                    .load(AlbumArt.of(musicItem))
+                    .apply(AlbumArtOptions.songThumbnail(this))
                     .into(miniAlbumArt);
         } catch (Exception e) {
             Log.e(TAG, "Error loading album art: " + e.getMessage(), e);
@@ -674,17 +557,6 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-
-        try {
-            sendMusicServiceAction(MusicService.ACTION_REQUEST_STATE);
-        } catch (Exception e) {
-            Log.e(TAG, "Error in onResume: " + e.getMessage(), e);
-        }
-    }
-
     @Override
     protected void onPause() {
         super.onPause();
@@ -705,18 +577,6 @@ public class MainActivity extends AppCompatActivity {
 
         mainHandler.removeCallbacksAndMessages(null);
 
-        if (isReceiverRegistered) {
-            try {
-                unregisterReceiver(musicUpdateReceiver);
-            } catch (IllegalArgumentException e) {
-                Log.w(TAG, "Receiver was not registered or already unregistered");
-            } catch (Exception e) {
-                Log.e(TAG, "Error unregistering receiver: " + e.getMessage(), e);
-            } finally {
-                isReceiverRegistered = false;
-            }
-        }
-
         // Clear resources
         try {
             currentPlayingItem = null;
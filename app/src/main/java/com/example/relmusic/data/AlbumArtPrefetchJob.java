@@ -0,0 +1,186 @@
+package com.example.relmusic.data;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.relmusic.ui.album.AlbumItem;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fills the {@link AlbumArtStore} after a library sync, so covers are already on disk
+ * when rows are bound. Runs only while the device is idle and the battery isn't low,
+ * extracting a few albums at a time on background-priority threads. Albums the store
+ * already has are skipped, which is what makes an interrupted run resume where it
+ * stopped. A sync that finishes while a run is in progress doesn't replace it (that
+ * would stop it, and the run's own library load is such a sync); it asks for another
+ * run once this one is done.
+ */
+public class AlbumArtPrefetchJob extends JobService {
+
+    private static final String TAG = "AlbumArtPrefetchJob";
+    private static final int JOB_ID = 1001;
+    private static final int PARALLELISM = 2;
+    private static final int BATCH_SIZE = 16;
+
+    // Guarded by the class lock.
+    private static boolean isRunning;
+    private static boolean isRunRequested;
+
+    private ExecutorService walker;
+    private ExecutorService workers;
+    private volatile boolean isStopped;
+
+    /**
+     * Schedules a run, replacing any pending one.
+     */
+    public static void schedule(Context context) {
+        synchronized (AlbumArtPrefetchJob.class) {
+            if (isRunning) {
+                isRunRequested = true;
+                return;
+            }
+        }
+
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, AlbumArtPrefetchJob.class))
+                .setRequiresDeviceIdle(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+            builder.setRequiresStorageNotLow(true);
+        }
+
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        if (jobScheduler != null) {
+            jobScheduler.schedule(builder.build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        synchronized (AlbumArtPrefetchJob.class) {
+            isRunning = true;
+        }
+        isStopped = false;
+        walker = Executors.newSingleThreadExecutor();
+        workers = Executors.newFixedThreadPool(PARALLELISM, runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, TAG));
+
+        LibraryRepository repository = LibraryRepository.getInstance(this);
+        if (repository.isLoaded()) {
+            start(params, repository.getCurrentLibrary());
+        } else {
+            // Started in a fresh process: let the repository load the library first.
+            repository.refresh((success, library) -> {
+                if (!isStopped) {
+                    start(params, library);
+                }
+            });
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        synchronized (AlbumArtPrefetchJob.class) {
+            isRunning = false;
+        }
+        isStopped = true;
+        shutdown();
+        return true;
+    }
+
+    private void start(JobParameters params, Library library) {
+        synchronized (AlbumArtPrefetchJob.class) {
+            // This run covers every sync published so far.
+            isRunRequested = false;
+        }
+        walker.execute(() -> {
+            boolean finished = prefetch(library);
+            if (finished) {
+                shutdown();
+                boolean runAgain;
+                synchronized (AlbumArtPrefetchJob.class) {
+                    isRunning = false;
+                    runAgain = isRunRequested;
+                    isRunRequested = false;
+                }
+                jobFinished(params, false);
+                if (runAgain) {
+                    schedule(this);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return false if the job was stopped before every album was stored
+     */
+    private boolean prefetch(Library library) {
+        AlbumArtStore store = AlbumArtStore.getInstance(this);
+        List<AlbumItem> pending = new ArrayList<>();
+        Set<Long> seenAlbumIds = new HashSet<>();
+        for (AlbumItem album : library.getAlbums()) {
+            long albumId = album.getAlbumId();
+            if (albumId >= 0 && seenAlbumIds.add(albumId)
+                    && !store.isStored(albumId, album.getSongPath(), AlbumArtStore.SIZE_MEDIUM)) {
+                pending.add(album);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        for (int from = 0; from < pending.size(); from += BATCH_SIZE) {
+            if (isStopped) {
+                Log.d(TAG, "Stopped with " + (pending.size() - from) + " albums left");
+                return false;
+            }
+
+            List<Callable<Void>> batch = new ArrayList<>();
+            for (AlbumItem album : pending.subList(from, Math.min(from + BATCH_SIZE, pending.size()))) {
+                batch.add(() -> {
+                    if (!isStopped) {
+                        store.getThumbnail(album.getAlbumId(), album.getSongPath(),
+                                AlbumArtStore.SIZE_MEDIUM);
+                    }
+                    return null;
+                });
+            }
+            try {
+                workers.invokeAll(batch);
+            } catch (InterruptedException e) {
+                return false;
+            } catch (RuntimeException e) {
+                // Shut down underneath us by onStopJob.
+                return false;
+            }
+        }
+
+        Log.d(TAG, "Stored " + pending.size() + " album covers in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    private void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        if (walker != null) {
+            walker.shutdown();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.relmusic.data;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+/**
+ * Album covers extracted once per album id and kept as small square WebP files at a few
+ * fixed sizes. Glide and the playback service both read from here, so after the first
+ * extraction every display is a file read rather than an embedded-tag extraction.
+ * When neither a song's embedded picture nor MediaStore's album art can be read, an empty
+ * marker file is left for that song, so it isn't extracted again while other songs of
+ * the album can still provide the cover.
+ *
+ * All methods block; call them off the main thread.
+ */
+public class AlbumArtStore {
+
+    private static final String TAG = "AlbumArtStore";
+    private static final String DIR_NAME = "album_art";
+    private static final int WEBP_QUALITY = 85;
+    private static final String MISSING_SUFFIX = ".none";
+
+    public static final int SIZE_SMALL = 192;
+    public static final int SIZE_MEDIUM = 512;
+    public static final int SIZE_LARGE = 1024;
+    private static final int[] SIZES = {SIZE_SMALL, SIZE_MEDIUM, SIZE_LARGE};
+
+    private static volatile AlbumArtStore instance;
+
+    private final Context appContext;
+    private final File directory;
+    // Striped locks so two threads never extract the same album at once.
+    private final Object[] locks = new Object[32];
+
+    private AlbumArtStore(Context context) {
+        appContext = context.getApplicationContext();
+        directory = new File(appContext.getCacheDir(), DIR_NAME);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public static AlbumArtStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (AlbumArtStore.class) {
+                if (instance == null) {
+                    instance = new AlbumArtStore(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Smallest stored size that covers {@code requestedPx}, give or take a slight upscale,
+     * or the largest one.
+     */
+    public static int sizeFor(int requestedPx) {
+        for (int size : SIZES) {
+            if (size * 5 / 4 >= requestedPx) {
+                return size;
+            }
+        }
+        return SIZE_LARGE;
+    }
+
+    /**
+     * Returns the cover of {@code albumId} at {@code size} (one of the SIZE_ constants),
+     * extracting it first if needed, or null if the album has no cover.
+     *
+     * @param songPath a song of the album to read embedded art from; may be null, in
+     *                 which case MediaStore's album art is used
+     */
+    @Nullable
+    public File getThumbnail(long albumId, @Nullable String songPath, int size) {
+        if (albumId < 0) {
+            return null;
+        }
+
+        File file = thumbnailFile(albumId, size);
+        if (file.exists()) {
+            return file;
+        }
+
+        synchronized (locks[(int) (albumId & (locks.length - 1))]) {
+            if (file.exists()) {
+                return file;
+            }
+            if (missingFile(albumId, songPath).exists()) {
+                return null;
+            }
+            extract(albumId, songPath, size);
+        }
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * True if {@code albumId} has already been extracted at {@code size}, or no cover
+     * could be found through {@code songPath}.
+     */
+    public boolean isStored(long albumId, @Nullable String songPath, int size) {
+        return thumbnailFile(albumId, size).exists() || missingFile(albumId, songPath).exists();
+    }
+
+    /**
+     * Drops every stored size of the given albums, e.g. after their songs were modified,
+     * so the next request extracts the cover again.
+     */
+    public void invalidate(Collection<Long> albumIds) {
+        if (albumIds.isEmpty()) {
+            return;
+        }
+        File[] markers = directory.listFiles((dir, name) -> name.endsWith(MISSING_SUFFIX));
+
+        for (long albumId : albumIds) {
+            synchronized (locks[(int) (albumId & (locks.length - 1))]) {
+                for (int size : SIZES) {
+                    thumbnailFile(albumId, size).delete();
+                }
+                if (markers == null) {
+                    continue;
+                }
+                String prefix = albumId + "_";
+                String albumMarker = albumId + MISSING_SUFFIX;
+                for (File marker : markers) {
+                    String name = marker.getName();
+                    if (name.equals(albumMarker) || name.startsWith(prefix)) {
+                        marker.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    // Writes the requested size and any smaller ones that are missing from one decode.
+    private void extract(long albumId, @Nullable String songPath, int size) {
+        byte[] source = readSource(albumId, songPath);
+        if (source == null) {
+            markMissing(albumId, songPath);
+            return;
+        }
+
+        Bitmap cover = decodeSquare(source, size);
+        if (cover == null) {
+            markMissing(albumId, songPath);
+            return;
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Error creating album art directory");
+            return;
+        }
+        for (int target : SIZES) {
+            if (target > size) {
+                break;
+            }
+            File file = thumbnailFile(albumId, target);
+            if (target == size || !file.exists()) {
+                write(cover, target, file);
+            }
+        }
+    }
+
+    @Nullable
+    private byte[] readSource(long albumId, @Nullable String songPath) {
+        if (songPath != null) {
+            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+            try {
+                retriever.setDataSource(songPath);
+                byte[] picture = retriever.getEmbeddedPicture();
+                if (picture != null) {
+                    return picture;
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Error reading embedded art of album " + albumId + ": " + e.getMessage());
+            } finally {
+                try {
+                    retriever.release();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        Uri albumArtUri = LibraryIndex.albumArtUri(albumId);
+        try (InputStream in = appContext.getContentResolver().openInputStream(albumArtUri)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            // Most albums without a cover end up here.
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Bitmap decodeSquare(byte[] source, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int inSampleSize = 1;
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        while (shortSide / (inSampleSize * 2) >= size) {
+            inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = inSampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+
+        Bitmap bitmap = BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+        int side = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        return Bitmap.createBitmap(bitmap,
+                (bitmap.getWidth() - side) / 2, (bitmap.getHeight() - side) / 2, side, side);
+    }
+
+    private void write(Bitmap cover, int size, File file) {
+        Bitmap scaled = cover.getWidth() > size
+                ? Bitmap.createScaledBitmap(cover, size, size, true)
+                : cover;
+
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            scaled.compress(webpFormat(), WEBP_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing album art: " + e.getMessage(), e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+        }
+    }
+
+    private void markMissing(long albumId, @Nullable String songPath) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        try {
+            missingFile(albumId, songPath).createNewFile();
+        } catch (IOException e) {
+            Log.e(TAG, "Error marking album art missing: " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+
+    private File thumbnailFile(long albumId, int size) {
+        return new File(directory, albumId + "_" + size + ".webp");
+    }
+
+    private File missingFile(long albumId, @Nullable String songPath) {
+        String name = songPath != null
+                ? albumId + "_" + Integer.toHexString(songPath.hashCode()) + MISSING_SUFFIX
+                : albumId + MISSING_SUFFIX;
+        return new File(directory, name);
+    }
+}
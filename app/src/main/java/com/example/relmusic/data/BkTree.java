@@ -0,0 +1,149 @@
+package com.example.relmusic.data;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Burkhard-Keller tree over a term dictionary under Levenshtein distance. A lookup for
+ * terms within distance d of a word only descends into children whose edge distance
+ * lies in [dist - d, dist + d], so typo lookups touch a small part of the dictionary.
+ * Nodes and child lists are stored in flat int arrays.
+ */
+class BkTree {
+
+    private static final long SHUFFLE_SEED = 0x5EEDL;
+
+    private final String[] terms;
+    // Per node: the term id, the edge distance from its parent, and a child list.
+    private final int[] nodeTerm;
+    private final int[] edge;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private int nodeCount;
+
+    // Distance rows reused between calls; a tree is only queried from one thread.
+    private int[] previousRow = new int[32];
+    private int[] currentRow = new int[32];
+
+    BkTree(String[] terms) {
+        this.terms = terms;
+        nodeTerm = new int[terms.length];
+        edge = new int[terms.length];
+        firstChild = new int[terms.length];
+        nextSibling = new int[terms.length];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+
+        // Inserting a sorted dictionary chains neighbouring terms into long paths; a
+        // shuffled order keeps the tree shallow. The seed is fixed so builds are repeatable.
+        int[] insertionOrder = new int[terms.length];
+        for (int i = 0; i < insertionOrder.length; i++) {
+            insertionOrder[i] = i;
+        }
+        Random random = new Random(SHUFFLE_SEED);
+        for (int i = insertionOrder.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = insertionOrder[i];
+            insertionOrder[i] = insertionOrder[j];
+            insertionOrder[j] = swap;
+        }
+        for (int termId : insertionOrder) {
+            insert(termId);
+        }
+    }
+
+    /**
+     * Collects the ids of terms within {@code maxDistance} of {@code word} into
+     * {@code outTerms}, with their distances in {@code outDistances}.
+     *
+     * @return the number of matches written
+     */
+    int search(String word, int maxDistance, int[] outTerms, int[] outDistances) {
+        if (nodeCount == 0) {
+            return 0;
+        }
+
+        int found = 0;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            int distance = distance(word, terms[nodeTerm[node]]);
+            if (distance <= maxDistance && found < outTerms.length) {
+                outTerms[found] = nodeTerm[node];
+                outDistances[found] = distance;
+                found++;
+            }
+
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (Math.abs(edge[child] - distance) <= maxDistance) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+        return found;
+    }
+
+    private void insert(int termId) {
+        int newNode = nodeCount++;
+        nodeTerm[newNode] = termId;
+        if (newNode == 0) {
+            return;
+        }
+
+        String term = terms[termId];
+        int node = 0;
+        while (true) {
+            int distance = distance(term, terms[nodeTerm[node]]);
+            if (distance == 0) {
+                // Duplicate term; the dictionary is distinct, so this does not happen.
+                nodeCount--;
+                return;
+            }
+
+            int child = firstChild[node];
+            while (child >= 0 && edge[child] != distance) {
+                child = nextSibling[child];
+            }
+            if (child < 0) {
+                edge[newNode] = distance;
+                nextSibling[newNode] = firstChild[node];
+                firstChild[node] = newNode;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    private int distance(String a, String b) {
+        int m = b.length();
+        if (previousRow.length <= m) {
+            previousRow = new int[m + 1];
+            currentRow = new int[m + 1];
+        }
+
+        int[] previous = previousRow;
+        int[] current = currentRow;
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+}
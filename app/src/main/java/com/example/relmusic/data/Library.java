@@ -0,0 +1,131 @@
+package com.example.relmusic.data;
+
+import android.net.Uri;
+
+import com.example.relmusic.ui.album.AlbumItem;
+import com.example.relmusic.ui.artist.ArtistItem;
+import com.example.relmusic.ui.music.MusicItem;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+public class Library {
+
+    public static final Library EMPTY = new Library(
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+    private final List<MusicItem> songs;
+    private final SongTable songTable;
+    private final List<AlbumItem> albums;
+    private final List<ArtistItem> artists;
+
+    private SearchIndex searchIndex;
+    private LongIntMap positionsById;
+
+    public Library(List<MusicItem> songs, List<AlbumItem> albums, List<ArtistItem> artists) {
+        this.songs = Collections.unmodifiableList(songs);
+        this.songTable = null;
+        this.albums = Collections.unmodifiableList(albums);
+        this.artists = Collections.unmodifiableList(artists);
+    }
+
+    Library(SongTable songTable, List<AlbumItem> albums, List<ArtistItem> artists) {
+        this.songs = new PagedSongList(songTable);
+        this.songTable = songTable;
+        this.albums = Collections.unmodifiableList(albums);
+        this.artists = Collections.unmodifiableList(artists);
+    }
+
+    /**
+     * MediaStore album art for {@code albumId}.
+     */
+    public static Uri albumArtUri(long albumId) {
+        return LibraryIndex.albumArtUri(albumId);
+    }
+
+    public List<MusicItem> getSongs() { return songs; }
+    public List<AlbumItem> getAlbums() { return albums; }
+    public List<ArtistItem> getArtists() { return artists; }
+
+    /**
+     * Columnar form of {@link #getSongs()}, or null for libraries built from plain lists.
+     */
+    SongTable getSongTable() {
+        return songTable;
+    }
+
+    public int getSongCount() {
+        return songs.size();
+    }
+
+    public boolean isEmpty() {
+        return songs.isEmpty();
+    }
+
+    /**
+     * Search index over the songs, built on first use. Call off the main thread.
+     */
+    synchronized SearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = SearchIndex.build(songTable != null ? songTable : SongTable.fromItems(songs));
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Read-only view of the songs at the given positions, e.g. search hits.
+     */
+    public List<MusicItem> getSongs(int[] positions) {
+        return new AbstractList<MusicItem>() {
+            @Override
+            public MusicItem get(int index) {
+                return songs.get(positions[index]);
+            }
+
+            @Override
+            public int size() {
+                return positions.length;
+            }
+        };
+    }
+
+    /**
+     * Ids of {@link #getSongs()} in order, read without creating items.
+     */
+    public long[] copySongIds() {
+        int count = songs.size();
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = songTable != null ? songTable.getId(i) : songs.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * The song at {@code position}, created on its own rather than through the page cache
+     * of {@link #getSongs()}, for scattered lookups such as a shuffled queue.
+     */
+    public MusicItem songAt(int position) {
+        return songTable != null ? songTable.create(position) : songs.get(position);
+    }
+
+    public int indexOfSong(long songId) {
+        return getPositionsById().get(songId);
+    }
+
+    /**
+     * Song id to position in {@link #getSongs()}, built on first use.
+     */
+    synchronized LongIntMap getPositionsById() {
+        if (positionsById == null) {
+            int count = songs.size();
+            LongIntMap positions = new LongIntMap(count);
+            for (int i = 0; i < count; i++) {
+                positions.put(songTable != null ? songTable.getId(i) : songs.get(i).getId(), i);
+            }
+            positionsById = positions;
+        }
+        return positionsById;
+    }
+}
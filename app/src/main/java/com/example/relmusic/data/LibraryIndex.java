@@ -0,0 +1,463 @@
+package com.example.relmusic.data;
+
+import android.net.Uri;
+
+import com.example.relmusic.ui.album.AlbumItem;
+import com.example.relmusic.ui.artist.ArtistItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Songs plus the album and artist aggregates derived from them, built from a single
+ * pass over the MediaStore rows and then patched in place by delta syncs.
+ */
+class LibraryIndex {
+
+    static final String ALBUM_ART_BASE_URI = "content://media/external/audio/albumart/";
+
+    // Album and artist entries are numbered process-wide, so an aggregate keeps its key
+    // for as long as it exists and a key is never handed to another aggregate.
+    private static final AtomicLong nextAggregateKey = new AtomicLong();
+
+    // Compaction waits until at least this many dead rows have piled up.
+    private static final int MIN_COMPACT_ROWS = 256;
+
+    // Song columns, append-only: a row is never written again once it exists, so every
+    // published SongTable can share these arrays. Replacing or removing a song leaves a
+    // dead row behind; a row is live while rowById still points at it.
+    private long[] ids;
+    private long[] durations;
+    private long[] albumIds;
+    private String[] titles;
+    private String[] paths;
+    private int[] artistRefs;
+    private int[] albumRefs;
+    private int rowCount;
+
+    private final StringPool pool;
+    private final LongIntMap rowById;
+
+    private final Map<String, AlbumEntry> albums = new HashMap<>();
+    private final Map<String, ArtistEntry> artists = new HashMap<>();
+    // Set when an album lost the song it takes its cover from and has other songs left.
+    private boolean hasAlbumsWithoutSong;
+
+    // The last built table: its rows in title order (dead rows are dropped lazily) and
+    // the first row appended after it.
+    private SongTable builtTable;
+    private int[] order = new int[0];
+    private int builtRowCount;
+    private boolean hasRemovals;
+
+    // Sync cursor: where the next delta query against MediaStore should start.
+    private String mediaStoreVersion;
+    private long maxGeneration;
+    private long maxDateModified;
+    private long maxDateAdded;
+
+    LibraryIndex() {
+        this(new StringPool(), new long[1024], new long[1024], new long[1024],
+                new String[1024], new String[1024], new int[1024], new int[1024], 0);
+    }
+
+    private LibraryIndex(StringPool pool, long[] ids, long[] durations, long[] albumIds,
+                         String[] titles, String[] paths, int[] artistRefs, int[] albumRefs,
+                         int rowCount) {
+        this.pool = pool;
+        this.ids = ids;
+        this.durations = durations;
+        this.albumIds = albumIds;
+        this.titles = titles;
+        this.paths = paths;
+        this.artistRefs = artistRefs;
+        this.albumRefs = albumRefs;
+        this.rowCount = rowCount;
+        rowById = new LongIntMap(Math.max(1024, rowCount));
+    }
+
+    /**
+     * Index over columns that are already in title order, e.g. read back from a snapshot.
+     * The arrays are adopted as they are, and the first {@link #build()} publishes them
+     * without sorting.
+     */
+    static LibraryIndex fromColumns(long[] ids, long[] durations, long[] albumIds,
+                                    String[] titles, String[] paths, int[] artistRefs,
+                                    int[] albumRefs, String[] pool) {
+        int count = ids.length;
+        LibraryIndex index = new LibraryIndex(new StringPool(pool), ids, durations, albumIds,
+                titles, paths, artistRefs, albumRefs, count);
+        for (int row = 0; row < count; row++) {
+            index.rowById.put(ids[row], row);
+        }
+
+        int[] order = new int[count];
+        int n = 0;
+        for (int row = 0; row < count; row++) {
+            // A repeated id keeps its last row, like addSong would.
+            if (index.isLive(row)) {
+                order[n++] = row;
+                index.countRow(row);
+            }
+        }
+        index.order = n == count ? order : Arrays.copyOf(order, n);
+        index.builtRowCount = count;
+        return index;
+    }
+
+    /**
+     * Adds the song, replacing and un-counting any previous row with the same id.
+     *
+     * @return false if the song was already stored exactly like this, in which case the
+     * index is left untouched
+     */
+    boolean addSong(long id, String title, String artist, String album,
+                    long duration, String path, long albumId) {
+        int existing = rowById.get(id);
+        if (existing != LongIntMap.NO_VALUE
+                && durations[existing] == duration
+                && albumIds[existing] == albumId
+                && Objects.equals(titles[existing], title)
+                && Objects.equals(paths[existing], path)
+                && Objects.equals(pool.get(artistRefs[existing]), artist)
+                && Objects.equals(pool.get(albumRefs[existing]), album)) {
+            return false;
+        }
+        removeSong(id);
+
+        if (rowCount == ids.length) {
+            resize(Math.max(1024, rowCount * 2));
+        }
+        int row = rowCount++;
+        ids[row] = id;
+        durations[row] = duration;
+        albumIds[row] = albumId;
+        titles[row] = title;
+        paths[row] = path;
+        artistRefs[row] = pool.intern(artist);
+        albumRefs[row] = pool.intern(album);
+        rowById.put(id, row);
+        countRow(row);
+        return true;
+    }
+
+    boolean removeSong(long id) {
+        int row = rowById.remove(id);
+        if (row == LongIntMap.NO_VALUE) {
+            return false;
+        }
+        hasRemovals = true;
+
+        String album = pool.get(albumRefs[row]);
+        if (album != null && !album.trim().isEmpty()) {
+            String albumKey = albumIds[row] + "_" + album;
+            AlbumEntry albumEntry = albums.get(albumKey);
+            if (albumEntry != null && --albumEntry.songCount <= 0) {
+                albums.remove(albumKey);
+            } else if (albumEntry != null && albumEntry.songId == id) {
+                albumEntry.songId = -1;
+                hasAlbumsWithoutSong = true;
+            }
+        }
+
+        String artist = pool.get(artistRefs[row]);
+        if (artist != null) {
+            ArtistEntry artistEntry = artists.get(artist);
+            if (artistEntry != null) {
+                artistEntry.totalDuration -= durations[row];
+                if (--artistEntry.songCount <= 0) {
+                    artists.remove(artist);
+                }
+            }
+        }
+        return true;
+    }
+
+    // Adds the row to its album and artist aggregates.
+    private void countRow(int row) {
+        long albumId = albumIds[row];
+        String album = pool.get(albumRefs[row]);
+        String artist = pool.get(artistRefs[row]);
+
+        if (album != null && !album.trim().isEmpty()) {
+            String albumKey = albumId + "_" + album;
+            AlbumEntry albumEntry = albums.get(albumKey);
+            if (albumEntry == null) {
+                albumEntry = new AlbumEntry(albumId, album,
+                        artist != null ? artist : "Unknown Artist");
+                albums.put(albumKey, albumEntry);
+            }
+            albumEntry.songCount++;
+            if (albumEntry.songId == -1) {
+                albumEntry.songId = ids[row];
+            }
+        }
+
+        if (artist != null && !artist.trim().isEmpty() && !artist.equals("<unknown>")) {
+            ArtistEntry artistEntry = artists.get(artist);
+            if (artistEntry == null) {
+                artistEntry = new ArtistEntry(artist, albumId);
+                artists.put(artist, artistEntry);
+            }
+            artistEntry.songCount++;
+            artistEntry.totalDuration += durations[row];
+        }
+    }
+
+    boolean contains(long id) {
+        return rowById.containsKey(id);
+    }
+
+    long[] copySongIds() {
+        long[] songIds = new long[rowById.size()];
+        int n = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (isLive(row)) {
+                songIds[n++] = ids[row];
+            }
+        }
+        return songIds;
+    }
+
+    int size() {
+        return rowById.size();
+    }
+
+    String getMediaStoreVersion() {
+        return mediaStoreVersion;
+    }
+
+    long getMaxGeneration() {
+        return maxGeneration;
+    }
+
+    long getMaxDateModified() {
+        return maxDateModified;
+    }
+
+    long getMaxDateAdded() {
+        return maxDateAdded;
+    }
+
+    void setSyncCursor(String mediaStoreVersion, long maxGeneration,
+                       long maxDateModified, long maxDateAdded) {
+        this.mediaStoreVersion = mediaStoreVersion;
+        this.maxGeneration = maxGeneration;
+        this.maxDateModified = maxDateModified;
+        this.maxDateAdded = maxDateAdded;
+    }
+
+    Library build() {
+        if (hasAlbumsWithoutSong) {
+            assignAlbumSongs();
+        }
+
+        List<AlbumItem> albumItems = new ArrayList<>(albums.size());
+        for (AlbumEntry entry : albums.values()) {
+            int songRow = rowById.get(entry.songId);
+            albumItems.add(new AlbumItem(entry.key, entry.albumId, entry.albumName,
+                    entry.artistName, albumArtUri(entry.albumId), entry.songCount,
+                    songRow != LongIntMap.NO_VALUE ? paths[songRow] : null));
+        }
+        Collections.sort(albumItems, (a, b) ->
+                String.CASE_INSENSITIVE_ORDER.compare(a.getAlbumName(), b.getAlbumName()));
+
+        List<ArtistItem> artistItems = new ArrayList<>(artists.size());
+        for (ArtistEntry entry : artists.values()) {
+            artistItems.add(new ArtistItem(entry.key, entry.artistName,
+                    albumArtUri(entry.artworkAlbumId), entry.songCount, entry.totalDuration));
+        }
+        Collections.sort(artistItems, (a, b) ->
+                String.CASE_INSENSITIVE_ORDER.compare(a.getArtistName(), b.getArtistName()));
+
+        return new Library(buildSongTable(), albumItems, artistItems);
+    }
+
+    // Gives every album that lost its cover song another one of its songs.
+    private void assignAlbumSongs() {
+        for (int row = 0; row < rowCount; row++) {
+            String album = pool.get(albumRefs[row]);
+            if (album == null || !isLive(row)) {
+                continue;
+            }
+            AlbumEntry albumEntry = albums.get(albumIds[row] + "_" + album);
+            if (albumEntry != null && albumEntry.songId == -1) {
+                albumEntry.songId = ids[row];
+            }
+        }
+        hasAlbumsWithoutSong = false;
+    }
+
+    /**
+     * Builds the title order by merging the rows appended since the last build into the
+     * previous order, so a delta sync costs O(n + k log k) for k changed rows and no
+     * column is copied. Returns the previous table as-is if nothing changed.
+     */
+    private SongTable buildSongTable() {
+        if (builtTable != null && builtRowCount == rowCount && !hasRemovals) {
+            return builtTable;
+        }
+        if (rowCount - rowById.size() > Math.max(MIN_COMPACT_ROWS, rowById.size() / 2)) {
+            compact();
+        }
+
+        Integer[] pending = new Integer[rowCount - builtRowCount];
+        int pendingCount = 0;
+        for (int row = builtRowCount; row < rowCount; row++) {
+            if (isLive(row)) {
+                pending[pendingCount++] = row;
+            }
+        }
+        // Full scans arrive sorted, so this is close to linear for them too.
+        Arrays.sort(pending, 0, pendingCount, (a, b) -> compareTitles(titles[a], titles[b]));
+
+        int[] merged = new int[rowById.size()];
+        int n = 0;
+        int i = 0;
+        for (int j = 0; j < pendingCount; j++) {
+            int row = pending[j];
+            while (i < order.length && compareTitles(titles[order[i]], titles[row]) <= 0) {
+                if (isLive(order[i])) {
+                    merged[n++] = order[i];
+                }
+                i++;
+            }
+            merged[n++] = row;
+        }
+        for (; i < order.length; i++) {
+            if (isLive(order[i])) {
+                merged[n++] = order[i];
+            }
+        }
+
+        order = merged;
+        builtRowCount = rowCount;
+        hasRemovals = false;
+        builtTable = new SongTable(ids, durations, albumIds, titles, paths, artistRefs,
+                albumRefs, merged, n, pool.values(), pool.size());
+        return builtTable;
+    }
+
+    /**
+     * Moves the live rows into fresh arrays, the previously built ones first and in title
+     * order. Published tables keep the old arrays.
+     */
+    private void compact() {
+        int capacity = Math.max(1024, rowById.size() * 2);
+        long[] oldIds = ids;
+        long[] oldDurations = durations;
+        long[] oldAlbumIds = albumIds;
+        String[] oldTitles = titles;
+        String[] oldPaths = paths;
+        int[] oldArtistRefs = artistRefs;
+        int[] oldAlbumRefs = albumRefs;
+        int oldRowCount = rowCount;
+        int[] oldOrder = order;
+        int oldBuiltRowCount = builtRowCount;
+
+        ids = new long[capacity];
+        durations = new long[capacity];
+        albumIds = new long[capacity];
+        titles = new String[capacity];
+        paths = new String[capacity];
+        artistRefs = new int[capacity];
+        albumRefs = new int[capacity];
+        rowCount = 0;
+
+        for (int row : oldOrder) {
+            if (rowById.get(oldIds[row]) == row) {
+                moveRow(oldIds, oldDurations, oldAlbumIds, oldTitles, oldPaths,
+                        oldArtistRefs, oldAlbumRefs, row);
+            }
+        }
+        order = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            order[row] = row;
+        }
+        builtRowCount = rowCount;
+
+        for (int row = oldBuiltRowCount; row < oldRowCount; row++) {
+            if (rowById.get(oldIds[row]) == row) {
+                moveRow(oldIds, oldDurations, oldAlbumIds, oldTitles, oldPaths,
+                        oldArtistRefs, oldAlbumRefs, row);
+            }
+        }
+    }
+
+    private void moveRow(long[] fromIds, long[] fromDurations, long[] fromAlbumIds,
+                         String[] fromTitles, String[] fromPaths, int[] fromArtistRefs,
+                         int[] fromAlbumRefs, int from) {
+        int row = rowCount++;
+        ids[row] = fromIds[from];
+        durations[row] = fromDurations[from];
+        albumIds[row] = fromAlbumIds[from];
+        titles[row] = fromTitles[from];
+        paths[row] = fromPaths[from];
+        artistRefs[row] = fromArtistRefs[from];
+        albumRefs[row] = fromAlbumRefs[from];
+        rowById.put(ids[row], row);
+    }
+
+    private boolean isLive(int row) {
+        return rowById.get(ids[row]) == row;
+    }
+
+    private void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        albumIds = Arrays.copyOf(albumIds, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        paths = Arrays.copyOf(paths, capacity);
+        artistRefs = Arrays.copyOf(artistRefs, capacity);
+        albumRefs = Arrays.copyOf(albumRefs, capacity);
+    }
+
+    static Uri albumArtUri(long albumId) {
+        return Uri.parse(ALBUM_ART_BASE_URI + albumId);
+    }
+
+    private static int compareTitles(String a, String b) {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        }
+        if (b == null) {
+            return 1;
+        }
+        return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+    }
+
+    private static class AlbumEntry {
+        final long key = nextAggregateKey.getAndIncrement();
+        final long albumId;
+        final String albumName;
+        final String artistName;
+        int songCount;
+        // A song of the album whose embedded picture stands for the album, or -1.
+        long songId = -1;
+
+        AlbumEntry(long albumId, String albumName, String artistName) {
+            this.albumId = albumId;
+            this.albumName = albumName;
+            this.artistName = artistName;
+        }
+    }
+
+    private static class ArtistEntry {
+        final long key = nextAggregateKey.getAndIncrement();
+        final String artistName;
+        final long artworkAlbumId;
+        int songCount;
+        long totalDuration;
+
+        ArtistEntry(String artistName, long artworkAlbumId) {
+            this.artistName = artistName;
+            this.artworkAlbumId = artworkAlbumId;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.relmusic.data;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Watches the audio table and turns bursts of change notifications (a download
+ * finishing, a folder being copied, the media scanner walking a card) into a single
+ * callback once things have been quiet for {@link #DEBOUNCE_MS}, or at most
+ * {@link #MAX_DELAY_MS} after the first notification of the burst.
+ */
+class LibraryObserver extends ContentObserver {
+
+    private static final long DEBOUNCE_MS = 1500;
+    private static final long MAX_DELAY_MS = 10000;
+
+    private final Handler handler;
+    private final Runnable onLibraryChanged;
+    private final Runnable dispatch = this::dispatch;
+
+    private long burstStartTime = 0;
+
+    LibraryObserver(Handler handler, Runnable onLibraryChanged) {
+        super(handler);
+        this.handler = handler;
+        this.onLibraryChanged = onLibraryChanged;
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+        onChange(selfChange, null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, Uri uri) {
+        long now = SystemClock.uptimeMillis();
+        if (burstStartTime == 0) {
+            burstStartTime = now;
+        }
+
+        handler.removeCallbacks(dispatch);
+        long runAt = Math.min(now + DEBOUNCE_MS, burstStartTime + MAX_DELAY_MS);
+        handler.postAtTime(dispatch, runAt);
+    }
+
+    private void dispatch() {
+        burstStartTime = 0;
+        onLibraryChanged.run();
+    }
+}
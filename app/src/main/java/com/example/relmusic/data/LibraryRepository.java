@@ -0,0 +1,385 @@
+package com.example.relmusic.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Application-scoped owner of the music library. Every screen observes the same
+ * {@link Library}, so a cold start or a refresh costs exactly one MediaStore scan.
+ * The last scan is kept on disk and published before MediaStore is consulted; after
+ * that, refreshes only read the rows MediaStore reports as added or modified since the
+ * recorded sync cursor and patch the index in place. Once the first sync succeeds,
+ * MediaStore changes trigger the same delta sync automatically.
+ */
+public class LibraryRepository {
+
+    private static final String TAG = "LibraryRepository";
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static volatile LibraryRepository instance;
+
+    public interface OnRefreshListener {
+        void onRefreshComplete(boolean success, Library library);
+    }
+
+    private final Context appContext;
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<Library> library = new MutableLiveData<>();
+    private final LibrarySnapshotStore snapshotStore;
+
+    // Only touched on the executor thread.
+    private LibraryIndex index;
+    private Library published;
+    private boolean snapshotChecked = false;
+
+    private volatile boolean isValidated = false;
+
+    private LibraryObserver libraryObserver;
+
+    private final List<OnRefreshListener> pendingListeners = new ArrayList<>();
+    private boolean isScanning = false;
+    private boolean isRescanRequested = false;
+
+    private LibraryRepository(Context context) {
+        appContext = context.getApplicationContext();
+        snapshotStore = new LibrarySnapshotStore(appContext);
+    }
+
+    public static LibraryRepository getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (LibraryRepository.class) {
+                if (instance == null) {
+                    instance = new LibraryRepository(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public LiveData<Library> getLibrary() {
+        return library;
+    }
+
+    @NonNull
+    public Library getCurrentLibrary() {
+        Library current = library.getValue();
+        return current != null ? current : Library.EMPTY;
+    }
+
+    public boolean isLoaded() {
+        return library.getValue() != null;
+    }
+
+    public void loadIfNeeded() {
+        if (!isValidated) {
+            refresh(null);
+        }
+    }
+
+    /**
+     * Publishes the on-disk snapshot, if any, without touching MediaStore. Safe to call
+     * before the storage permission is granted.
+     */
+    public void preloadSnapshot() {
+        executorService.execute(this::loadSnapshot);
+    }
+
+    public void refresh(@Nullable OnRefreshListener listener) {
+        synchronized (this) {
+            if (listener != null) {
+                pendingListeners.add(listener);
+            }
+
+            if (isScanning) {
+                isRescanRequested = true;
+                return;
+            }
+            isScanning = true;
+        }
+
+        executorService.execute(this::runScan);
+    }
+
+    private void startObserving() {
+        if (libraryObserver != null) {
+            return;
+        }
+
+        libraryObserver = new LibraryObserver(mainHandler, () -> refresh(null));
+        appContext.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, libraryObserver);
+    }
+
+    private void loadSnapshot() {
+        if (snapshotChecked) {
+            return;
+        }
+        snapshotChecked = true;
+
+        long start = System.currentTimeMillis();
+        LibraryIndex snapshot = snapshotStore.read();
+        if (snapshot != null && index == null) {
+            index = snapshot;
+            publish(snapshot.build());
+            Log.d(TAG, "Loaded " + snapshot.size() + " songs from snapshot in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private void publish(Library result) {
+        published = result;
+        library.postValue(result);
+    }
+
+    private void runScan() {
+        Library result = null;
+        try {
+            loadSnapshot();
+
+            if (index == null || !isSyncCursorValid(index)) {
+                index = scanMediaStore();
+                result = index.build();
+                publish(result);
+                snapshotStore.write(result.getSongTable(), index);
+                AlbumArtPrefetchJob.schedule(appContext);
+            } else if (syncDelta(index)) {
+                result = index.build();
+                publish(result);
+                snapshotStore.write(result.getSongTable(), index);
+                AlbumArtPrefetchJob.schedule(appContext);
+            } else {
+                result = published;
+            }
+            isValidated = true;
+            mainHandler.post(this::startObserving);
+        } catch (Exception e) {
+            Log.e(TAG, "Error scanning music library: " + e.getMessage(), e);
+        }
+
+        List<OnRefreshListener> listeners;
+        boolean rescan;
+        synchronized (this) {
+            rescan = isRescanRequested;
+            isRescanRequested = false;
+            isScanning = rescan;
+            listeners = rescan ? new ArrayList<>() : new ArrayList<>(pendingListeners);
+            if (!rescan) {
+                pendingListeners.clear();
+            }
+        }
+
+        if (rescan) {
+            executorService.execute(this::runScan);
+            return;
+        }
+
+        final boolean success = result != null;
+        final Library scanned = success ? result : getCurrentLibrary();
+        mainHandler.post(() -> {
+            for (OnRefreshListener listener : listeners) {
+                listener.onRefreshComplete(success, scanned);
+            }
+        });
+    }
+
+    private boolean isSyncCursorValid(LibraryIndex current) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // A new version means the MediaStore database was rebuilt and generations restarted.
+            String version = MediaStore.getVersion(appContext);
+            return version != null && version.equals(current.getMediaStoreVersion());
+        }
+        return true;
+    }
+
+    /**
+     * Applies additions, modifications and deletions since the last sync to {@code current}.
+     *
+     * @return whether anything changed
+     */
+    private boolean syncDelta(LibraryIndex current) {
+        long start = System.currentTimeMillis();
+        ContentResolver contentResolver = appContext.getContentResolver();
+        Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+        String musicSelection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
+
+        Set<Long> liveIds = new HashSet<>();
+        try (Cursor cursor = contentResolver.query(musicUri,
+                new String[]{MediaStore.Audio.Media._ID}, musicSelection, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    liveIds.add(cursor.getLong(0));
+                } while (cursor.moveToNext());
+            }
+        }
+
+        List<Long> deletedIds = new ArrayList<>();
+        for (long id : current.copySongIds()) {
+            if (!liveIds.contains(id)) {
+                deletedIds.add(id);
+            }
+        }
+        for (Long id : deletedIds) {
+            current.removeSong(id);
+        }
+
+        String selection;
+        String[] selectionArgs;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            selection = musicSelection + " AND (" + MediaStore.Audio.Media.GENERATION_MODIFIED
+                    + " > ? OR " + MediaStore.Audio.Media.GENERATION_ADDED + " > ?)";
+            String generation = String.valueOf(current.getMaxGeneration());
+            selectionArgs = new String[]{generation, generation};
+        } else {
+            // Timestamps have one-second resolution, so re-read the boundary second. Rows
+            // that come back unchanged are skipped by the index and not counted.
+            selection = musicSelection + " AND (" + MediaStore.Audio.Media.DATE_MODIFIED
+                    + " >= ? OR " + MediaStore.Audio.Media.DATE_ADDED + " >= ?)";
+            selectionArgs = new String[]{
+                    String.valueOf(current.getMaxDateModified()),
+                    String.valueOf(current.getMaxDateAdded())
+            };
+        }
+        Set<Long> changedAlbumIds = new HashSet<>();
+        int changed = querySongs(current, selection, selectionArgs, changedAlbumIds);
+
+        // Rows that became music without a newer cursor value (e.g. IS_MUSIC flipped).
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : liveIds) {
+            if (!current.contains(id)) {
+                missingIds.add(id);
+            }
+        }
+        for (int from = 0; from < missingIds.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = missingIds.subList(from,
+                    Math.min(from + MAX_IDS_PER_QUERY, missingIds.size()));
+            StringBuilder ids = new StringBuilder();
+            for (Long id : chunk) {
+                if (ids.length() > 0) {
+                    ids.append(',');
+                }
+                ids.append(id);
+            }
+            changed += querySongs(current,
+                    MediaStore.Audio.Media._ID + " IN (" + ids + ")", null, changedAlbumIds);
+        }
+        // Their covers may have changed with the tags; the prefetch job extracts them again.
+        AlbumArtStore.getInstance(appContext).invalidate(changedAlbumIds);
+
+        Log.d(TAG, "Delta sync: " + changed + " changed, " + deletedIds.size() + " deleted in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return changed > 0 || !deletedIds.isEmpty();
+    }
+
+    private LibraryIndex scanMediaStore() {
+        LibraryIndex scanned = new LibraryIndex();
+        String mediaStoreVersion = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? MediaStore.getVersion(appContext) : null;
+        scanned.setSyncCursor(mediaStoreVersion, 0, 0, 0);
+        querySongs(scanned, MediaStore.Audio.Media.IS_MUSIC + " != 0", null, null);
+        return scanned;
+    }
+
+    /**
+     * Upserts every matching row into {@code target} and advances its sync cursor.
+     *
+     * @param albumIds if not null, receives the album id of every row that changed
+     * @return the number of rows that were new or differed from the stored ones
+     */
+    private int querySongs(LibraryIndex target, String selection, @Nullable String[] selectionArgs,
+                           @Nullable Set<Long> albumIds) {
+        ContentResolver contentResolver = appContext.getContentResolver();
+        Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+        boolean hasGeneration = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+
+        List<String> projection = new ArrayList<>(Arrays.asList(
+                MediaStore.Audio.Media._ID,
+                MediaStore.Audio.Media.TITLE,
+                MediaStore.Audio.Media.ARTIST,
+                MediaStore.Audio.Media.ALBUM,
+                MediaStore.Audio.Media.DURATION,
+                MediaStore.Audio.Media.DATA,
+                MediaStore.Audio.Media.ALBUM_ID,
+                MediaStore.Audio.Media.DATE_MODIFIED,
+                MediaStore.Audio.Media.DATE_ADDED
+        ));
+        if (hasGeneration) {
+            projection.add(MediaStore.Audio.Media.GENERATION_MODIFIED);
+            projection.add(MediaStore.Audio.Media.GENERATION_ADDED);
+        }
+
+        String sortOrder = MediaStore.Audio.Media.TITLE + " ASC";
+
+        long maxGeneration = target.getMaxGeneration();
+        long maxDateModified = target.getMaxDateModified();
+        long maxDateAdded = target.getMaxDateAdded();
+        int count = 0;
+
+        try (Cursor cursor = contentResolver.query(musicUri, projection.toArray(new String[0]),
+                selection, selectionArgs, sortOrder)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+                int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+                int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+                int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
+                int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+                int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+                int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
+                int dateModifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED);
+                int dateAddedColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED);
+                int generationModifiedColumn = hasGeneration
+                        ? cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.GENERATION_MODIFIED) : -1;
+                int generationAddedColumn = hasGeneration
+                        ? cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.GENERATION_ADDED) : -1;
+
+                do {
+                    boolean isChanged = target.addSong(
+                            cursor.getLong(idColumn),
+                            cursor.getString(titleColumn),
+                            cursor.getString(artistColumn),
+                            cursor.getString(albumColumn),
+                            cursor.getLong(durationColumn),
+                            cursor.getString(pathColumn),
+                            cursor.getLong(albumIdColumn));
+                    if (isChanged) {
+                        count++;
+                        if (albumIds != null) {
+                            albumIds.add(cursor.getLong(albumIdColumn));
+                        }
+                    }
+
+                    maxDateModified = Math.max(maxDateModified, cursor.getLong(dateModifiedColumn));
+                    maxDateAdded = Math.max(maxDateAdded, cursor.getLong(dateAddedColumn));
+                    if (hasGeneration) {
+                        maxGeneration = Math.max(maxGeneration, Math.max(
+                                cursor.getLong(generationModifiedColumn),
+                                cursor.getLong(generationAddedColumn)));
+                    }
+                } while (cursor.moveToNext());
+            }
+        }
+
+        target.setSyncCursor(target.getMediaStoreVersion(), maxGeneration, maxDateModified, maxDateAdded);
+        return count;
+    }
+}
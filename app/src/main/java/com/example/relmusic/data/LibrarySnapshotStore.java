@@ -0,0 +1,180 @@
+package com.example.relmusic.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary copy of the library index so a cold start can render from disk while
+ * MediaStore is checked in the background.
+ *
+ * Layout: header (including the MediaStore sync cursor), then the {@link SongTable}
+ * columns in display order: ids, durations, album ids, artist and album references into
+ * the string pool, titles, paths, and finally the pool itself. Strings are
+ * length-prefixed UTF-8, with -1 standing for null. Reading loads the columns straight
+ * into a {@link LibraryIndex} without sorting or re-adding rows one by one.
+ */
+class LibrarySnapshotStore {
+
+    private static final String TAG = "LibrarySnapshotStore";
+    private static final String FILE_NAME = "library.snapshot";
+    private static final int MAGIC = 0x524C4942; // "RLIB"
+    private static final int VERSION = 3;
+
+    private final File file;
+
+    LibrarySnapshotStore(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    @Nullable
+    LibraryIndex read() {
+        if (!file.exists()) {
+            return null;
+        }
+
+        // Every byte is decoded right away, so one sequential read beats mapping the file.
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            int count = buffer.getInt();
+            int poolSize = buffer.getInt();
+            long maxGeneration = buffer.getLong();
+            long maxDateModified = buffer.getLong();
+            long maxDateAdded = buffer.getLong();
+            String mediaStoreVersion = readString(buffer, new byte[64]);
+
+            long[] ids = readLongs(buffer, count);
+            long[] durations = readLongs(buffer, count);
+            long[] albumIds = readLongs(buffer, count);
+            int[] artistRefs = readInts(buffer, count);
+            int[] albumRefs = readInts(buffer, count);
+
+            byte[] scratch = new byte[256];
+            String[] titles = new String[count];
+            for (int i = 0; i < count; i++) {
+                titles[i] = readString(buffer, scratch);
+            }
+            String[] paths = new String[count];
+            for (int i = 0; i < count; i++) {
+                paths[i] = readString(buffer, scratch);
+            }
+            String[] pool = new String[poolSize];
+            for (int i = 0; i < poolSize; i++) {
+                pool[i] = readString(buffer, scratch);
+            }
+
+            LibraryIndex index = LibraryIndex.fromColumns(ids, durations, albumIds, titles,
+                    paths, artistRefs, albumRefs, pool);
+            index.setSyncCursor(mediaStoreVersion, maxGeneration, maxDateModified, maxDateAdded);
+            return index;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable library snapshot: " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    void write(SongTable table, LibraryIndex cursor) {
+        File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int count = table.size();
+            out.writeInt(count);
+            out.writeInt(table.getPoolSize());
+            out.writeLong(cursor.getMaxGeneration());
+            out.writeLong(cursor.getMaxDateModified());
+            out.writeLong(cursor.getMaxDateAdded());
+            writeString(out, cursor.getMediaStoreVersion());
+
+            for (int i = 0; i < count; i++) {
+                out.writeLong(table.getId(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeLong(table.getDuration(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeLong(table.getAlbumId(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeInt(table.getArtistRef(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeInt(table.getAlbumRef(i));
+            }
+            for (int i = 0; i < count; i++) {
+                writeString(out, table.getTitle(i));
+            }
+            for (int i = 0; i < count; i++) {
+                writeString(out, table.getPath(i));
+            }
+            for (int i = 0; i < table.getPoolSize(); i++) {
+                writeString(out, table.getPoolString(i));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing library snapshot: " + e.getMessage(), e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Error replacing library snapshot");
+            tempFile.delete();
+        }
+    }
+
+    private static long[] readLongs(ByteBuffer buffer, int count) {
+        long[] values = new long[count];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + count * 8);
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > scratch.length) {
+            scratch = new byte[length];
+        }
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.relmusic.data;
+
+import com.example.relmusic.ui.music.MusicItem;
+
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-only song list that only materializes {@link MusicItem}s for the pages that are
+ * actually being looked at. Pages are kept in a small LRU, so memory stays bounded by
+ * {@link #PAGE_SIZE} * {@link #MAX_PAGES} items no matter how large the library is.
+ * Touching a row close to the end of its page also builds the next page, which keeps
+ * a forward fling from stalling on page boundaries.
+ */
+public class PagedSongList extends AbstractList<MusicItem> implements RandomAccess {
+
+    static final int PAGE_SIZE = 64;
+    private static final int MAX_PAGES = 8;
+    private static final int PREFETCH_DISTANCE = 16;
+
+    interface SongSource {
+        int size();
+        long getId(int position);
+        MusicItem create(int position);
+        boolean hasSameContents(int position, SongSource other, int otherPosition);
+    }
+
+    private final SongSource source;
+    private final Map<Integer, MusicItem[]> pages =
+            new LinkedHashMap<Integer, MusicItem[]>(MAX_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, MusicItem[]> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+
+    PagedSongList(SongSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public MusicItem get(int index) {
+        if (index < 0 || index >= source.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + source.size());
+        }
+
+        int pageIndex = index / PAGE_SIZE;
+        synchronized (pages) {
+            MusicItem[] page = getPage(pageIndex);
+            if (index % PAGE_SIZE >= PAGE_SIZE - PREFETCH_DISTANCE
+                    && (pageIndex + 1) * PAGE_SIZE < source.size()) {
+                getPage(pageIndex + 1);
+            }
+            return page[index % PAGE_SIZE];
+        }
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    public long getId(int index) {
+        return source.getId(index);
+    }
+
+    /**
+     * Whether the song at {@code index} shows the same title, artist, duration and album
+     * as the one at {@code otherIndex} of {@code other}, compared without creating items.
+     */
+    public boolean hasSameContents(int index, PagedSongList other, int otherIndex) {
+        return source.hasSameContents(index, other.source, otherIndex);
+    }
+
+    private MusicItem[] getPage(int pageIndex) {
+        MusicItem[] page = pages.get(pageIndex);
+        if (page == null) {
+            int start = pageIndex * PAGE_SIZE;
+            int count = Math.min(PAGE_SIZE, source.size() - start);
+            page = new MusicItem[count];
+            for (int i = 0; i < count; i++) {
+                page[i] = source.create(start + i);
+            }
+            pages.put(pageIndex, page);
+        }
+        return page;
+    }
+}
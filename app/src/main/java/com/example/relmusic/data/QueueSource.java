@@ -0,0 +1,125 @@
+package com.example.relmusic.data;
+
+import android.content.Intent;
+
+import com.example.relmusic.ui.music.MusicItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes a play queue without carrying the songs themselves: either the whole library
+ * or a packed list of song ids, plus the song to start from. The receiver resolves it
+ * against the shared {@link Library}, so starting playback never parcels MusicItems.
+ */
+public final class QueueSource {
+
+    private static final String EXTRA_SOURCE = "queue_source";
+    private static final String EXTRA_SONG_IDS = "queue_song_ids";
+    private static final String EXTRA_START_SONG_ID = "queue_start_song_id";
+
+    private static final int SOURCE_ALL_SONGS = 0;
+    private static final int SOURCE_SONG_IDS = 1;
+
+    private final int source;
+    private final long[] songIds;
+    private final long startSongId;
+
+    private QueueSource(int source, long[] songIds, long startSongId) {
+        this.source = source;
+        this.songIds = songIds;
+        this.startSongId = startSongId;
+    }
+
+    public static QueueSource allSongs(long startSongId) {
+        return new QueueSource(SOURCE_ALL_SONGS, null, startSongId);
+    }
+
+    public static QueueSource ofSongs(List<MusicItem> songs, long startSongId) {
+        long[] ids = new long[songs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = songs.get(i).getId();
+        }
+        return new QueueSource(SOURCE_SONG_IDS, ids, startSongId);
+    }
+
+    public static QueueSource ofIds(long[] songIds, long startSongId) {
+        return new QueueSource(SOURCE_SONG_IDS, songIds, startSongId);
+    }
+
+    public long getStartSongId() {
+        return startSongId;
+    }
+
+    public void writeTo(Intent intent) {
+        intent.putExtra(EXTRA_SOURCE, source);
+        intent.putExtra(EXTRA_START_SONG_ID, startSongId);
+        if (songIds != null) {
+            intent.putExtra(EXTRA_SONG_IDS, songIds);
+        }
+    }
+
+    /**
+     * @return the source written by {@link #writeTo}, or null if the intent has none
+     */
+    public static QueueSource readFrom(Intent intent) {
+        if (!intent.hasExtra(EXTRA_SOURCE)) {
+            return null;
+        }
+
+        int source = intent.getIntExtra(EXTRA_SOURCE, SOURCE_ALL_SONGS);
+        long startSongId = intent.getLongExtra(EXTRA_START_SONG_ID, -1);
+        if (source == SOURCE_SONG_IDS) {
+            long[] ids = intent.getLongArrayExtra(EXTRA_SONG_IDS);
+            return new QueueSource(source, ids != null ? ids : new long[0], startSongId);
+        }
+        return new QueueSource(SOURCE_ALL_SONGS, null, startSongId);
+    }
+
+    /**
+     * Looks the queue up in {@code library}. Ids no longer in the library are skipped.
+     */
+    public Queue resolve(Library library) {
+        if (source == SOURCE_ALL_SONGS) {
+            int startIndex = library.indexOfSong(startSongId);
+            return new Queue(library.copySongIds(), Math.max(startIndex, 0));
+        }
+
+        LongIntMap positions = library.getPositionsById();
+        long[] ids = new long[songIds.length];
+        int count = 0;
+        int startIndex = 0;
+        for (long id : songIds) {
+            if (positions.get(id) == LongIntMap.NO_VALUE) {
+                continue;
+            }
+            if (id == startSongId) {
+                startIndex = count;
+            }
+            ids[count++] = id;
+        }
+        return new Queue(count < ids.length ? Arrays.copyOf(ids, count) : ids, startIndex);
+    }
+
+    /**
+     * A resolved queue: ids of songs in the library it was resolved against.
+     */
+    public static final class Queue {
+
+        private final long[] songIds;
+        private final int startIndex;
+
+        Queue(long[] songIds, int startIndex) {
+            this.songIds = songIds;
+            this.startIndex = startIndex;
+        }
+
+        public long[] getSongIds() {
+            return songIds;
+        }
+
+        public int getStartIndex() {
+            return startIndex;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package com.example.relmusic.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Inverted index over the normalized title, artist and album tokens of a
+ * {@link SongTable}. Every query token must match some field of a song; a token matches
+ * a term exactly, as a prefix, or (from three characters on) anywhere inside it, found
+ * through a trigram index over the term dictionary. Results are ranked by the best
+ * field each token hit, title over artist over album, then by library order.
+ *
+ * A token that matches no term at all is treated as a typo: it is looked up in a
+ * BK-tree over the dictionary and matches terms within edit distance 1 (from four
+ * characters) or 2 (from six), ranked by distance and then by field.
+ *
+ * A forward index (the terms of each song) lets a query that only narrows the previous
+ * one be answered by re-checking the previous hits instead of walking posting lists.
+ */
+class SearchIndex {
+
+    static final int FIELD_TITLE = 0;
+    static final int FIELD_ARTIST = 1;
+    static final int FIELD_ALBUM = 2;
+
+    private static final int MATCH_INFIX = 1;
+    private static final int MATCH_PREFIX = 2;
+    private static final int MATCH_EXACT = 3;
+
+    private static final int MIN_INFIX_LENGTH = 3;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int MIN_FUZZY_2_LENGTH = 6;
+    private static final int MAX_FUZZY_DISTANCE = 2;
+
+    private final int songCount;
+    // Sorted term dictionary; postings[t] holds (position << 2 | field), ascending.
+    private final String[] terms;
+    private final int[][] postings;
+    private final Map<String, int[]> termsByTrigram;
+    // Forward index: entries songTermStart[p]..songTermStart[p + 1] of songTerms hold
+    // (termId << 2 | field) for the song at position p.
+    private final int[] songTermStart;
+    private final int[] songTerms;
+
+    // Scratch space reused between searches, which are serialized on this instance.
+    private int[] stamp;
+    private int[] tokenScore;
+    private int[] totalScore;
+    private int[] candidates;
+
+    private final BkTree bkTree;
+    private final int[] fuzzyTerms;
+    private final int[] fuzzyDistances;
+
+    private SearchIndex(int songCount, String[] terms, int[][] postings,
+                        Map<String, int[]> termsByTrigram, int[] songTermStart, int[] songTerms) {
+        this.songCount = songCount;
+        this.terms = terms;
+        this.postings = postings;
+        this.termsByTrigram = termsByTrigram;
+        this.songTermStart = songTermStart;
+        this.songTerms = songTerms;
+        // Built here, on the thread building the index, rather than on a keystroke.
+        bkTree = new BkTree(terms);
+        fuzzyTerms = new int[terms.length];
+        fuzzyDistances = new int[terms.length];
+    }
+
+    static SearchIndex build(SongTable table) {
+        int songCount = table.size();
+
+        // Artist and album names repeat, so tokenize each distinct pool string once.
+        String[][] poolTokens = new String[table.getPoolSize()][];
+        for (int i = 0; i < poolTokens.length; i++) {
+            poolTokens[i] = distinct(TextNormalizer.tokenize(table.getPoolString(i)));
+        }
+
+        Map<String, IntList> postingsByTerm = new HashMap<>();
+        for (int position = 0; position < songCount; position++) {
+            addTokens(postingsByTerm, distinct(TextNormalizer.tokenize(table.getTitle(position))),
+                    position, FIELD_TITLE);
+            int artistRef = table.getArtistRef(position);
+            if (artistRef >= 0) {
+                addTokens(postingsByTerm, poolTokens[artistRef], position, FIELD_ARTIST);
+            }
+            int albumRef = table.getAlbumRef(position);
+            if (albumRef >= 0) {
+                addTokens(postingsByTerm, poolTokens[albumRef], position, FIELD_ALBUM);
+            }
+        }
+
+        String[] terms = postingsByTerm.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        Map<String, IntList> trigramLists = new HashMap<>();
+        for (int termId = 0; termId < terms.length; termId++) {
+            String term = terms[termId];
+            postings[termId] = postingsByTerm.get(term).toArray();
+
+            for (int i = 0; i + MIN_INFIX_LENGTH <= term.length(); i++) {
+                String trigram = term.substring(i, i + MIN_INFIX_LENGTH);
+                IntList list = trigramLists.get(trigram);
+                if (list == null) {
+                    list = new IntList();
+                    trigramLists.put(trigram, list);
+                }
+                // Term ids are visited in order, so a repeat can only be the last entry.
+                if (list.size == 0 || list.last() != termId) {
+                    list.add(termId);
+                }
+            }
+        }
+
+        Map<String, int[]> termsByTrigram = new HashMap<>(trigramLists.size() * 2);
+        for (Map.Entry<String, IntList> entry : trigramLists.entrySet()) {
+            termsByTrigram.put(entry.getKey(), entry.getValue().toArray());
+        }
+
+        int[] songTermStart = new int[songCount + 1];
+        for (int[] termPostings : postings) {
+            for (int entry : termPostings) {
+                songTermStart[(entry >>> 2) + 1]++;
+            }
+        }
+        for (int i = 0; i < songCount; i++) {
+            songTermStart[i + 1] += songTermStart[i];
+        }
+        int[] songTerms = new int[songTermStart[songCount]];
+        int[] fill = Arrays.copyOf(songTermStart, songCount);
+        for (int termId = 0; termId < postings.length; termId++) {
+            for (int entry : postings[termId]) {
+                songTerms[fill[entry >>> 2]++] = termId << 2 | (entry & 3);
+            }
+        }
+
+        return new SearchIndex(songCount, terms, postings, termsByTrigram, songTermStart, songTerms);
+    }
+
+    /**
+     * Whether every song matching {@code query} also matches {@code previousQuery}, so
+     * {@link #refine} over the previous hits gives the same answer as {@link #search}.
+     */
+    static boolean canRefine(String previousQuery, String query) {
+        List<String> previous = TextNormalizer.tokenize(previousQuery);
+        List<String> next = TextNormalizer.tokenize(query);
+        if (previous.isEmpty() || next.size() < previous.size()) {
+            return false;
+        }
+
+        int last = previous.size() - 1;
+        for (int i = 0; i < last; i++) {
+            if (!previous.get(i).equals(next.get(i))) {
+                return false;
+            }
+        }
+
+        String previousToken = previous.get(last);
+        String nextToken = next.get(last);
+        if (!nextToken.startsWith(previousToken)) {
+            return false;
+        }
+        // Growing past the infix threshold lets the token match inside words it could
+        // not match before, which widens the result instead of narrowing it.
+        return previousToken.length() >= MIN_INFIX_LENGTH || nextToken.length() < MIN_INFIX_LENGTH;
+    }
+
+    /**
+     * Whether re-checking {@code previousHitCount} songs is likely cheaper than walking
+     * the posting lists; per candidate, refining costs several string comparisons.
+     */
+    boolean isRefineCheaper(int previousHitCount) {
+        return previousHitCount <= songCount / 8;
+    }
+
+    /**
+     * Re-ranks the subset of {@code previousHits} that matches {@code query}, or returns
+     * null if {@code cancelled} fires first. A query with a token that would fall back to
+     * fuzzy matching is searched in full, since its hits need not be previous hits.
+     */
+    int[] refine(String query, int[] previousHits, BooleanSupplier cancelled) {
+        List<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return new int[0];
+        }
+        for (String token : tokens) {
+            if (findTerms(token).length == 0) {
+                return search(query, cancelled);
+            }
+        }
+
+        long[] keyed = new long[previousHits.length];
+        int n = 0;
+        for (int i = 0; i < previousHits.length; i++) {
+            if ((i & 0xFF) == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+
+            int position = previousHits[i];
+            int total = 0;
+            for (String token : tokens) {
+                int best = bestScore(position, token);
+                if (best < 0) {
+                    total = -1;
+                    break;
+                }
+                total += best;
+            }
+            if (total >= 0) {
+                keyed[n++] = rankKey(total, position);
+            }
+        }
+        return unpackSorted(keyed, n);
+    }
+
+    /**
+     * Returns the positions of matching songs in rank order, or null if
+     * {@code cancelled} fires first.
+     */
+    synchronized int[] search(String query, BooleanSupplier cancelled) {
+        List<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty() || songCount == 0) {
+            return new int[0];
+        }
+        ensureScratch();
+
+        int candidateCount = 0;
+        for (int k = 0; k < tokens.size(); k++) {
+            String token = tokens.get(k);
+            int matched = 0;
+
+            int[] matchingTerms = findTerms(token);
+            if (matchingTerms.length == 0) {
+                matched = matchFuzzy(token, k, candidateCount, cancelled);
+                if (matched < 0) {
+                    resetStamps(candidateCount);
+                    return null;
+                }
+                candidateCount += k == 0 ? matched : 0;
+            }
+            for (int termId : matchingTerms) {
+                if (cancelled.getAsBoolean()) {
+                    resetStamps(candidateCount);
+                    return null;
+                }
+
+                String term = terms[termId];
+                int kind = term.equals(token) ? MATCH_EXACT
+                        : term.startsWith(token) ? MATCH_PREFIX : MATCH_INFIX;
+
+                int added = collect(termId, k, candidateCount, kind, 4);
+                matched += added;
+                candidateCount += k == 0 ? added : 0;
+            }
+
+            if (matched == 0) {
+                resetStamps(candidateCount);
+                return new int[0];
+            }
+
+            for (int i = 0; i < candidateCount; i++) {
+                int position = candidates[i];
+                if (stamp[position] == k) {
+                    totalScore[position] += tokenScore[position];
+                }
+            }
+        }
+
+        int last = tokens.size() - 1;
+        long[] keyed = new long[candidateCount];
+        int n = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int position = candidates[i];
+            if (stamp[position] == last) {
+                keyed[n++] = rankKey(totalScore[position], position);
+            }
+        }
+
+        resetStamps(candidateCount);
+        return unpackSorted(keyed, n);
+    }
+
+    /**
+     * Marks the songs reached from every term within typo distance of {@code token},
+     * scored so a closer term always outranks a better field.
+     *
+     * @return the number of songs matched, or -1 if {@code cancelled} fired
+     */
+    private int matchFuzzy(String token, int k, int candidateCount, BooleanSupplier cancelled) {
+        if (token.length() < MIN_FUZZY_LENGTH) {
+            return 0;
+        }
+        if (cancelled.getAsBoolean()) {
+            return -1;
+        }
+
+        int maxDistance = token.length() >= MIN_FUZZY_2_LENGTH ? 2 : 1;
+        int found = bkTree.search(token, maxDistance, fuzzyTerms, fuzzyDistances);
+        int matched = 0;
+        for (int i = 0; i < found; i++) {
+            if (cancelled.getAsBoolean()) {
+                if (k == 0) {
+                    resetStamps(candidateCount, candidateCount + matched);
+                }
+                return -1;
+            }
+            int kind = MAX_FUZZY_DISTANCE + 1 - fuzzyDistances[i];
+            int added = collect(fuzzyTerms[i], k, candidateCount + (k == 0 ? matched : 0),
+                    kind * 4, 1);
+            matched += added;
+        }
+        return matched;
+    }
+
+    /**
+     * Scores the postings of {@code termId} for token {@code k}, as
+     * {@code fieldRank * fieldWeight + kind}, and appends new candidates for the first
+     * token after {@code candidateCount}.
+     *
+     * @return the number of songs that matched token {@code k} for the first time
+     */
+    private int collect(int termId, int k, int candidateCount, int kind, int fieldWeight) {
+        int matched = 0;
+        for (int entry : postings[termId]) {
+            int position = entry >>> 2;
+            int score = fieldRank(entry & 3) * fieldWeight + kind;
+
+            if (stamp[position] == k) {
+                // Already matched this token through another term or field.
+                tokenScore[position] = Math.max(tokenScore[position], score);
+            } else if (stamp[position] == k - 1) {
+                // Matched every earlier token; still a candidate.
+                stamp[position] = k;
+                tokenScore[position] = score;
+                if (k == 0) {
+                    totalScore[position] = 0;
+                    candidates[candidateCount + matched] = position;
+                }
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private int bestScore(int position, String token) {
+        int best = -1;
+        for (int i = songTermStart[position]; i < songTermStart[position + 1]; i++) {
+            int entry = songTerms[i];
+            String term = terms[entry >>> 2];
+            int kind = term.equals(token) ? MATCH_EXACT
+                    : term.startsWith(token) ? MATCH_PREFIX
+                    : token.length() >= MIN_INFIX_LENGTH && term.contains(token) ? MATCH_INFIX
+                    : 0;
+            if (kind > 0) {
+                best = Math.max(best, fieldRank(entry & 3) * 4 + kind);
+            }
+        }
+        return best;
+    }
+
+    // Score descending, then position ascending, packed into one sortable long.
+    private static long rankKey(int score, int position) {
+        return ((long) (Integer.MAX_VALUE - score) << 32) | position;
+    }
+
+    private static int[] unpackSorted(long[] keyed, int count) {
+        Arrays.sort(keyed, 0, count);
+        int[] hits = new int[count];
+        for (int i = 0; i < count; i++) {
+            hits[i] = (int) keyed[i];
+        }
+        return hits;
+    }
+
+    private int[] findTerms(String token) {
+        int from = lowerBound(token);
+        int to = from;
+        while (to < terms.length && terms[to].startsWith(token)) {
+            to++;
+        }
+
+        if (token.length() < MIN_INFIX_LENGTH) {
+            int[] prefixTerms = new int[to - from];
+            for (int i = 0; i < prefixTerms.length; i++) {
+                prefixTerms[i] = from + i;
+            }
+            return prefixTerms;
+        }
+
+        // Intersect the trigram lists, then confirm the substring.
+        int[] infixTerms = null;
+        for (int i = 0; i + MIN_INFIX_LENGTH <= token.length(); i++) {
+            int[] list = termsByTrigram.get(token.substring(i, i + MIN_INFIX_LENGTH));
+            if (list == null) {
+                infixTerms = new int[0];
+                break;
+            }
+            infixTerms = infixTerms == null ? list : intersect(infixTerms, list);
+        }
+
+        IntList result = new IntList();
+        for (int i = from; i < to; i++) {
+            result.add(i);
+        }
+        for (int termId : infixTerms) {
+            if ((termId < from || termId >= to) && terms[termId].contains(token)) {
+                result.add(termId);
+            }
+        }
+        return result.toArray();
+    }
+
+    private int lowerBound(String token) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(token) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void ensureScratch() {
+        if (stamp == null) {
+            stamp = new int[songCount];
+            Arrays.fill(stamp, -1);
+            tokenScore = new int[songCount];
+            totalScore = new int[songCount];
+            candidates = new int[songCount];
+        }
+    }
+
+    private void resetStamps(int candidateCount) {
+        resetStamps(0, candidateCount);
+    }
+
+    private void resetStamps(int from, int to) {
+        for (int i = from; i < to; i++) {
+            stamp[candidates[i]] = -1;
+        }
+    }
+
+    private static int fieldRank(int field) {
+        return 2 - field;
+    }
+
+    private static void addTokens(Map<String, IntList> postingsByTerm, String[] tokens,
+                                  int position, int field) {
+        for (String token : tokens) {
+            IntList list = postingsByTerm.get(token);
+            if (list == null) {
+                list = new IntList();
+                postingsByTerm.put(token, list);
+            }
+            list.add(position << 2 | field);
+        }
+    }
+
+    private static String[] distinct(List<String> tokens) {
+        if (tokens.size() < 2) {
+            return tokens.toArray(new String[0]);
+        }
+        return new LinkedHashSet<>(tokens).toArray(new String[0]);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int last() {
+            return values[size - 1];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
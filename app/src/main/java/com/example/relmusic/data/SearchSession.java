@@ -0,0 +1,96 @@
+package com.example.relmusic.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.relmusic.ui.music.MusicItem;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs searches for one search screen. Only the latest query counts: submitting a new
+ * one cancels whatever is still running, and stale results are never delivered. When
+ * the new query only narrows the previous one ("bea" to "beat"), the previous hits are
+ * re-checked instead of searching the whole library again.
+ */
+public class SearchSession {
+
+    private static final String TAG = "SearchSession";
+
+    public interface Callback {
+        void onResults(String query, List<MusicItem> results);
+    }
+
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger latestRequest = new AtomicInteger();
+
+    private volatile Library library = Library.EMPTY;
+
+    // Only touched on the executor thread.
+    private Library lastLibrary;
+    private String lastQuery;
+    private int[] lastHits;
+
+    public void setLibrary(Library library) {
+        this.library = library;
+        // Build the index now so the first keystroke doesn't pay for it.
+        executorService.execute(library::getSearchIndex);
+    }
+
+    public void search(String query, Callback callback) {
+        final int request = latestRequest.incrementAndGet();
+        final Library searchLibrary = library;
+
+        executorService.execute(() -> {
+            if (request != latestRequest.get()) {
+                return;
+            }
+
+            try {
+                SearchIndex index = searchLibrary.getSearchIndex();
+                int[] hits;
+                if (searchLibrary == lastLibrary && lastQuery != null
+                        && index.isRefineCheaper(lastHits.length)
+                        && SearchIndex.canRefine(lastQuery, query)) {
+                    hits = index.refine(query, lastHits, () -> request != latestRequest.get());
+                } else {
+                    hits = index.search(query, () -> request != latestRequest.get());
+                }
+
+                if (hits == null) {
+                    return;
+                }
+                lastLibrary = searchLibrary;
+                lastQuery = query;
+                lastHits = hits;
+
+                List<MusicItem> results = searchLibrary.getSongs(hits);
+                mainHandler.post(() -> {
+                    if (request == latestRequest.get()) {
+                        callback.onResults(query, results);
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error searching library: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Drops any search in flight without starting a new one.
+     */
+    public void cancel() {
+        latestRequest.incrementAndGet();
+    }
+
+    public void release() {
+        cancel();
+        mainHandler.removeCallbacksAndMessages(null);
+        executorService.shutdown();
+    }
+}
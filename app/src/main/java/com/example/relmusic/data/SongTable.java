@@ -0,0 +1,147 @@
+package com.example.relmusic.data;
+
+import com.example.relmusic.ui.music.MusicItem;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable view of the song rows in display order. The columns are the index's own
+ * append-only arrays, shared between consecutive tables; {@code order} maps each
+ * position to its row. Artist and album names are references into a shared pool, and
+ * album art Uris are derived from the album id only when a {@link MusicItem} view is
+ * created for a row.
+ */
+class SongTable implements PagedSongList.SongSource {
+
+    private final long[] ids;
+    private final long[] durations;
+    private final long[] albumIds;
+    private final String[] titles;
+    private final String[] paths;
+    private final int[] artistRefs;
+    private final int[] albumRefs;
+    private final int[] order;
+    private final int count;
+    private final String[] pool;
+    private final int poolSize;
+
+    SongTable(long[] ids, long[] durations, long[] albumIds, String[] titles, String[] paths,
+              int[] artistRefs, int[] albumRefs, int[] order, int count,
+              String[] pool, int poolSize) {
+        this.ids = ids;
+        this.durations = durations;
+        this.albumIds = albumIds;
+        this.titles = titles;
+        this.paths = paths;
+        this.artistRefs = artistRefs;
+        this.albumRefs = albumRefs;
+        this.order = order;
+        this.count = count;
+        this.pool = pool;
+        this.poolSize = poolSize;
+    }
+
+    static SongTable fromItems(List<MusicItem> items) {
+        int count = items.size();
+        long[] ids = new long[count];
+        long[] durations = new long[count];
+        long[] albumIds = new long[count];
+        String[] titles = new String[count];
+        String[] paths = new String[count];
+        int[] artistRefs = new int[count];
+        int[] albumRefs = new int[count];
+        int[] order = new int[count];
+        StringPool pool = new StringPool();
+
+        for (int i = 0; i < count; i++) {
+            MusicItem item = items.get(i);
+            ids[i] = item.getId();
+            durations[i] = item.getDuration();
+            albumIds[i] = item.getAlbumId();
+            titles[i] = item.getTitle();
+            paths[i] = item.getPath();
+            artistRefs[i] = pool.intern(item.getArtist());
+            albumRefs[i] = pool.intern(item.getAlbum());
+            order[i] = i;
+        }
+        return new SongTable(ids, durations, albumIds, titles, paths, artistRefs, albumRefs,
+                order, count, pool.values(), pool.size());
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public long getId(int position) {
+        return ids[order[position]];
+    }
+
+    long getDuration(int position) {
+        return durations[order[position]];
+    }
+
+    long getAlbumId(int position) {
+        return albumIds[order[position]];
+    }
+
+    String getTitle(int position) {
+        return titles[order[position]];
+    }
+
+    String getPath(int position) {
+        return paths[order[position]];
+    }
+
+    int getArtistRef(int position) {
+        return artistRefs[order[position]];
+    }
+
+    int getAlbumRef(int position) {
+        return albumRefs[order[position]];
+    }
+
+    String getArtist(int position) {
+        return getPoolString(getArtistRef(position));
+    }
+
+    String getAlbum(int position) {
+        return getPoolString(getAlbumRef(position));
+    }
+
+    int getPoolSize() {
+        return poolSize;
+    }
+
+    String getPoolString(int ref) {
+        return ref >= 0 ? pool[ref] : null;
+    }
+
+    @Override
+    public boolean hasSameContents(int position, PagedSongList.SongSource other,
+                                   int otherPosition) {
+        SongTable table = (SongTable) other;
+        int row = order[position];
+        int otherRow = table.order[otherPosition];
+        if (ids == table.ids && row == otherRow) {
+            // The same row of shared columns, which is never rewritten.
+            return true;
+        }
+        return durations[row] == table.durations[otherRow]
+                && albumIds[row] == table.albumIds[otherRow]
+                && Objects.equals(titles[row], table.titles[otherRow])
+                && Objects.equals(getPoolString(artistRefs[row]),
+                        table.getPoolString(table.artistRefs[otherRow]))
+                && Objects.equals(getPoolString(albumRefs[row]),
+                        table.getPoolString(table.albumRefs[otherRow]));
+    }
+
+    @Override
+    public MusicItem create(int position) {
+        int row = order[position];
+        return new MusicItem(ids[row], titles[row], getPoolString(artistRefs[row]),
+                getPoolString(albumRefs[row]), durations[row], paths[row], albumIds[row]);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.relmusic.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the artist and album names that repeat across thousands of rows, handing out
+ * int references so a song only stores two ints instead of two String pointers per copy.
+ * References stay valid for the lifetime of the pool; -1 stands for null. The pool only
+ * ever appends, so a {@link SongTable} can keep reading the backing array it was given.
+ */
+class StringPool {
+
+    private final Map<String, Integer> refs;
+    private String[] values;
+    private int size;
+
+    StringPool() {
+        refs = new HashMap<>();
+        values = new String[256];
+    }
+
+    /**
+     * Pool whose references are the indexes into {@code values}, which is adopted as-is.
+     */
+    StringPool(String[] values) {
+        refs = new HashMap<>(values.length * 2);
+        this.values = values.length > 0 ? values : new String[256];
+        size = values.length;
+        for (int i = 0; i < size; i++) {
+            refs.putIfAbsent(values[i], i);
+        }
+    }
+
+    int intern(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        Integer ref = refs.get(value);
+        if (ref == null) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            ref = size;
+            values[size++] = value;
+            refs.put(value, ref);
+        }
+        return ref;
+    }
+
+    String get(int ref) {
+        return ref >= 0 ? values[ref] : null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * The backing array; entries from {@link #size()} on may be filled in later.
+     */
+    String[] values() {
+        return values;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.relmusic.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds text into search keys: lower case, accents and other combining marks removed,
+ * a few letters that do not decompose spelled out, and anything that is not a letter
+ * or digit treated as a word break, so "Beyonc&eacute; - D&eacute;j&agrave; Vu" becomes
+ * "beyonce deja vu".
+ */
+final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        String decomposed = isAscii(text) ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK) {
+                continue;
+            }
+
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && out.length() > 0) {
+                    out.append(' ');
+                }
+                pendingSpace = false;
+                appendFolded(out, Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return out.toString();
+    }
+
+    static List<String> tokenize(String text) {
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (start < normalized.length()) {
+            int end = normalized.indexOf(' ', start);
+            if (end < 0) {
+                end = normalized.length();
+            }
+            if (end > start) {
+                tokens.add(normalized.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return tokens;
+    }
+
+    private static void appendFolded(StringBuilder out, char c) {
+        switch (c) {
+            case '\u00df': // sharp s
+                out.append("ss");
+                break;
+            case '\u00e6': // ae
+                out.append("ae");
+                break;
+            case '\u0153': // oe
+                out.append("oe");
+                break;
+            case '\u00f8': // o with stroke
+                out.append('o');
+                break;
+            case '\u0111': // d with stroke
+            case '\u00f0': // eth
+                out.append('d');
+                break;
+            case '\u0142': // l with stroke
+                out.append('l');
+                break;
+            case '\u0131': // dotless i
+                out.append('i');
+                break;
+            case '\u00fe': // thorn
+                out.append("th");
+                break;
+            default:
+                out.append(c);
+        }
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
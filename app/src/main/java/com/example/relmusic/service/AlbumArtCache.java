@@ -0,0 +1,64 @@
+package com.example.relmusic.service;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import com.example.relmusic.ui.music.MusicItem;
+
+/**
+ * Decoded, centre-cropped covers for the notification and the media session, bounded by
+ * a byte budget. Entries are keyed by album id, so every track of an album shares one
+ * bitmap; songs without an album id are keyed by their own id. Songs whose art could not
+ * be found are remembered by song id, so they aren't extracted again while other tracks
+ * of the album still get their chance.
+ */
+class AlbumArtCache {
+
+    private static final int MAX_BUDGET_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_MISSING_ENTRIES = 256;
+
+    private final LruCache<Long, Bitmap> bitmaps;
+    private final LruCache<Long, Boolean> missing = new LruCache<>(MAX_MISSING_ENTRIES);
+
+    AlbumArtCache() {
+        int budget = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, MAX_BUDGET_BYTES);
+        bitmaps = new LruCache<Long, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    Bitmap get(MusicItem item) {
+        return bitmaps.get(keyOf(item));
+    }
+
+    boolean isKnownMissing(MusicItem item) {
+        return missing.get(item.getId()) != null;
+    }
+
+    void put(MusicItem item, Bitmap bitmap) {
+        if (bitmap == null) {
+            missing.put(item.getId(), Boolean.TRUE);
+        } else {
+            bitmaps.put(keyOf(item), bitmap);
+        }
+    }
+
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            bitmaps.evictAll();
+            missing.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            bitmaps.trimToSize(bitmaps.maxSize() / 2);
+        }
+    }
+
+    private static long keyOf(MusicItem item) {
+        long albumId = item.getAlbumId();
+        return albumId >= 0 ? albumId : -item.getId() - 1;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.relmusic.service;
+
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a few reset MediaPlayers around so a track change doesn't tear down and rebuild
+ * the native player. Each {@link #acquire} starts a new lease; callbacks are only
+ * forwarded while the lease that registered them is still current, so an event queued
+ * by a player before it was recycled can never reach its next user.
+ */
+class MediaPlayerPool {
+
+    private static final String TAG = "MediaPlayerPool";
+    private static final int MAX_IDLE = 2;
+
+    private final MediaPlayer.OnPreparedListener preparedListener;
+    private final MediaPlayer.OnCompletionListener completionListener;
+    private final MediaPlayer.OnErrorListener errorListener;
+
+    private final ArrayDeque<MediaPlayer> idle = new ArrayDeque<>();
+    private final Map<MediaPlayer, Integer> leases = new IdentityHashMap<>();
+    private int leaseCounter;
+
+    MediaPlayerPool(MediaPlayer.OnPreparedListener preparedListener,
+                    MediaPlayer.OnCompletionListener completionListener,
+                    MediaPlayer.OnErrorListener errorListener) {
+        this.preparedListener = preparedListener;
+        this.completionListener = completionListener;
+        this.errorListener = errorListener;
+    }
+
+    /**
+     * Returns a player in the Idle state, reused if one is available.
+     */
+    MediaPlayer acquire() {
+        MediaPlayer player = idle.pollFirst();
+        if (player == null) {
+            player = new MediaPlayer();
+        }
+
+        final int lease = ++leaseCounter;
+        leases.put(player, lease);
+
+        player.setOnPreparedListener(mp -> {
+            if (isLeased(mp, lease)) {
+                preparedListener.onPrepared(mp);
+            }
+        });
+        player.setOnCompletionListener(mp -> {
+            if (isLeased(mp, lease)) {
+                completionListener.onCompletion(mp);
+            }
+        });
+        player.setOnErrorListener((mp, what, extra) ->
+                isLeased(mp, lease) && errorListener.onError(mp, what, extra));
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                    .build();
+            player.setAudioAttributes(audioAttributes);
+        } else {
+            player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        }
+        player.setLooping(false);
+        player.setVolume(1.0f, 1.0f);
+        return player;
+    }
+
+    /**
+     * Ends the current lease of {@code player}, resets it and keeps it for reuse. The
+     * caller must not touch the player afterwards.
+     */
+    void recycle(MediaPlayer player) {
+        if (player == null || leases.remove(player) == null) {
+            return;
+        }
+
+        try {
+            player.reset();
+        } catch (Exception e) {
+            Log.e(TAG, "Error resetting media player: " + e.getMessage(), e);
+            releaseQuietly(player);
+            return;
+        }
+
+        if (idle.size() < MAX_IDLE) {
+            idle.addLast(player);
+        } else {
+            releaseQuietly(player);
+        }
+    }
+
+    void releaseAll() {
+        for (MediaPlayer player : leases.keySet()) {
+            releaseQuietly(player);
+        }
+        leases.clear();
+
+        for (MediaPlayer player : idle) {
+            releaseQuietly(player);
+        }
+        idle.clear();
+    }
+
+    private boolean isLeased(MediaPlayer player, int lease) {
+        Integer current = leases.get(player);
+        return current != null && current == lease;
+    }
+
+    private static void releaseQuietly(MediaPlayer player) {
+        try {
+            player.release();
+        } catch (Exception e) {
+            Log.e(TAG, "Error releasing media player: " + e.getMessage(), e);
+        }
+    }
+}
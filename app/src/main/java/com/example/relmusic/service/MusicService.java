@@ -3,7 +3,6 @@ package com.example.relmusic.service;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -17,25 +16,33 @@ import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 
-import androidx.core.app.NotificationCompat;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Observer;
 import androidx.media.session.MediaButtonReceiver;
 
-import com.example.relmusic.MainActivity;
-import com.example.relmusic.R;
+import com.example.relmusic.data.AlbumArtStore;
+import com.example.relmusic.data.Library;
+import com.example.relmusic.data.LibraryRepository;
+import com.example.relmusic.data.QueueSource;
 import com.example.relmusic.ui.music.MusicItem;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MusicService extends Service implements
         MediaPlayer.OnPreparedListener,
@@ -58,36 +65,95 @@ public class MusicService extends Service implements
     public static final String ACTION_TOGGLE_SHUFFLE = "ACTION_TOGGLE_SHUFFLE";
     public static final String ACTION_TOGGLE_REPEAT = "ACTION_TOGGLE_REPEAT";
     public static final String ACTION_SET_PLAYLIST = "ACTION_SET_PLAYLIST";
-
-    public static final String ACTION_MUSIC_UPDATED = "ACTION_MUSIC_UPDATED";
-    public static final String ACTION_PLAYBACK_STATE_CHANGED = "ACTION_PLAYBACK_STATE_CHANGED";
-    public static final String ACTION_HIDE_MINI_PLAYER = "ACTION_HIDE_MINI_PLAYER";
-    public static final String ACTION_SHUFFLE_STATE_CHANGED = "ACTION_SHUFFLE_STATE_CHANGED";
-    public static final String ACTION_REPEAT_STATE_CHANGED = "ACTION_REPEAT_STATE_CHANGED";
+    public static final String ACTION_PLAY_QUEUE = "ACTION_PLAY_QUEUE";
 
     public static final int REPEAT_OFF = 0;
     public static final int REPEAT_ALL = 1;
     public static final int REPEAT_ONE = 2;
 
-    private MediaPlayer mediaPlayer;
+    public static final int SHUFFLE_OFF = 0;
+    public static final int SHUFFLE_ON = 1;
+
+    // For playQueue: leave the current shuffle or repeat mode as it is.
+    public static final int MODE_UNCHANGED = -1;
+
+    private static final String PREFS_NAME = "app_preferences";
+    private static final String PREF_GAPLESS = "gapless_playback";
+    private static final String PREF_CROSSFADE = "crossfade_duration_ms";
+
+    public static final int MAX_CROSSFADE_MS = 12000;
+    private static final long CROSSFADE_TICK_MS = 50;
+
+    private static final int MSG_PLAY = 1;
+    private static final int MSG_PAUSE = 2;
+    private static final int MSG_TOGGLE_PLAY_PAUSE = 3;
+    private static final int MSG_NEXT = 4;
+    private static final int MSG_PREVIOUS = 5;
+    private static final int MSG_STOP = 6;
+    private static final int MSG_SEEK = 7;
+    private static final int MSG_REQUEST_STATE = 8;
+    private static final int MSG_TOGGLE_SHUFFLE = 9;
+    private static final int MSG_TOGGLE_REPEAT = 10;
+    private static final int MSG_SET_PLAYLIST = 11;
+    private static final int MSG_AUDIO_FOCUS = 12;
+    private static final int MSG_RESHUFFLE = 13;
+    private static final int MSG_SET_GAPLESS = 14;
+    private static final int MSG_SET_CROSSFADE = 15;
+    private static final int MSG_PLAY_QUEUE = 16;
+    private static final int MSG_RESTORE_SESSION = 17;
+
+    private static final long CHECKPOINT_INTERVAL_MS = 10000;
+
+    private final AlbumArtCache albumArtCache = new AlbumArtCache();
+    // Covers are decoded here so a cold cover never holds up the playback thread.
+    private final ExecutorService artExecutor = Executors.newSingleThreadExecutor();
+    // Song whose cover is being decoded, or -1. Playback thread only.
+    private long artLoadingSongId = -1;
+    private final MediaPlayerPool playerPool = new MediaPlayerPool(this, this, this);
+    private volatile MediaPlayer mediaPlayer;
+    // Gapless mode: the following track, prepared ahead and chained to mediaPlayer.
+    private MediaPlayer nextPlayer;
+    private MusicItem nextSong;
+    private int nextIndex = -1;
+    private boolean isNextPrepared = false;
+    private boolean isGaplessEnabled = true;
+    // Crossfade: the previous track, still ramping down after mediaPlayer took over.
+    private MediaPlayer fadingOutPlayer;
+    private int crossfadeDurationMs = 0;
+    private long crossfadeStartedAt;
+    private long crossfadeLengthMs;
     private MediaSessionCompat mediaSession;
     private AudioManager audioManager;
     private AudioFocusRequest audioFocusRequest;
     private NotificationManager notificationManager;
-
-    private MusicItem currentSong;
-    private boolean isPlaying = false;
+    private PlaybackNotifier notifier;
+    private PlaybackJournal journal;
+    // Position to seek to once a track restored from the journal is prepared, or -1.
+    private long restorePositionMs = -1;
+
+    // Playback state is owned by the playback thread: commands reach it as messages on
+    // handler, and the media player, session and audio focus callbacks are delivered
+    // there too. Fields read by bound activities are volatile.
+    private HandlerThread playbackThread;
+    private Handler handler;
+
+    private volatile MusicItem currentSong;
+    private volatile boolean isPlaying = false;
     private boolean isPrepared = false;
-    private boolean isServiceDestroyed = false;
-    private Handler handler = new Handler(Looper.getMainLooper());
+    private volatile boolean isServiceDestroyed = false;
+    // Main thread only.
+    private boolean isRestoreRequested;
 
-    private List<MusicItem> playlist = new ArrayList<>();
-    private List<MusicItem> originalPlaylist = new ArrayList<>();
-    private int currentIndex = -1;
+    private PlayQueue queue = new PlayQueue(Library.EMPTY, new long[0]);
+    private volatile int currentIndex = -1;
+    // Immutable view of the queue for readers on other threads.
+    private volatile List<MusicItem> queueSnapshot = Collections.emptyList();
 
-    private boolean isShuffleEnabled = false;
-    private int repeatMode = REPEAT_OFF;
+    private volatile boolean isShuffleEnabled = false;
+    private volatile int repeatMode = REPEAT_OFF;
     private Random random = new Random();
+    // Time of the last track change request, for the start latency log.
+    private long trackRequestedAt;
 
     public class MusicBinder extends Binder {
         public MusicService getService() {
@@ -102,11 +168,62 @@ public class MusicService extends Service implements
         audioManager = (AudioManager) getSystemService(AUDIO_SERVICE);
         notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 
+        isGaplessEnabled = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getBoolean(PREF_GAPLESS, true);
+        crossfadeDurationMs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getInt(PREF_CROSSFADE, 0);
+
+        playbackThread = new HandlerThread("MusicPlayback", Process.THREAD_PRIORITY_AUDIO);
+        playbackThread.start();
+        handler = new Handler(playbackThread.getLooper(), this::handleCommand);
+
         createNotificationChannel();
-        initializeMediaPlayer();
         initializeMediaSession();
+        notifier = new PlaybackNotifier(this, notificationManager, handler,
+                CHANNEL_ID, NOTIFICATION_ID, mediaSession.getSessionToken());
+        // Players deliver their callbacks to the looper of the thread that created them.
+        handler.post(this::initializeMediaPlayer);
+
+        journal = new PlaybackJournal(this);
     }
 
+    /**
+     * Restores the saved session once the library is available to resolve its ids, on the
+     * first start or bind. A start that replaces the queue anyway skips it, so the previous
+     * session doesn't flash up before the requested song.
+     */
+    private void requestRestore(@Nullable Intent intent) {
+        if (isRestoreRequested) {
+            return;
+        }
+        isRestoreRequested = true;
+
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_PLAY.equals(action) || ACTION_PLAY_QUEUE.equals(action)
+                || ACTION_SET_PLAYLIST.equals(action)) {
+            return;
+        }
+        LibraryRepository.getInstance(this).getLibrary().observeForever(libraryObserver);
+    }
+
+    private final Observer<Library> libraryObserver = new Observer<Library>() {
+        @Override
+        public void onChanged(Library library) {
+            LibraryRepository.getInstance(MusicService.this).getLibrary().removeObserver(this);
+            handler.obtainMessage(MSG_RESTORE_SESSION, library).sendToTarget();
+        }
+    };
+
+    private final Runnable checkpointTicker = new Runnable() {
+        @Override
+        public void run() {
+            if (isPlaying) {
+                saveCheckpoint();
+                handler.postDelayed(this, CHECKPOINT_INTERVAL_MS);
+            }
+        }
+    };
+
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
@@ -122,20 +239,7 @@ public class MusicService extends Service implements
     }
 
     private void initializeMediaPlayer() {
-        mediaPlayer = new MediaPlayer();
-        mediaPlayer.setOnPreparedListener(this);
-        mediaPlayer.setOnCompletionListener(this);
-        mediaPlayer.setOnErrorListener(this);
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_MEDIA)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .build();
-            mediaPlayer.setAudioAttributes(audioAttributes);
-        } else {
-            mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        }
+        mediaPlayer = playerPool.acquire();
     }
 
     private void initializeMediaSession() {
@@ -195,7 +299,7 @@ public class MusicService extends Service implements
                         break;
                 }
             }
-        });
+        }, handler);
 
         mediaSession.setActive(true);
     }
@@ -207,6 +311,7 @@ public class MusicService extends Service implements
         if (isServiceDestroyed) {
             return START_NOT_STICKY;
         }
+        requestRestore(intent);
 
         try {
             if (intent != null && intent.getAction() != null) {
@@ -215,45 +320,48 @@ public class MusicService extends Service implements
                 switch (action) {
                     case ACTION_PLAY:
                         MusicItem musicItem = intent.getParcelableExtra("music_item");
-                        if (musicItem != null) {
-                            playMusic(musicItem);
-                        } else {
-                            resumeMusic();
-                        }
+                        handler.obtainMessage(MSG_PLAY, musicItem).sendToTarget();
                         break;
                     case ACTION_PAUSE:
-                        pauseMusic();
+                        handler.sendEmptyMessage(MSG_PAUSE);
                         break;
                     case ACTION_TOGGLE_PLAY_PAUSE:
-                        togglePlayPause();
+                        handler.sendEmptyMessage(MSG_TOGGLE_PLAY_PAUSE);
                         break;
                     case ACTION_NEXT:
-                        playNext();
+                        handler.sendEmptyMessage(MSG_NEXT);
                         break;
                     case ACTION_PREVIOUS:
-                        playPrevious();
+                        handler.sendEmptyMessage(MSG_PREVIOUS);
                         break;
                     case ACTION_STOP:
-                        stopMusic();
+                        handler.sendEmptyMessage(MSG_STOP);
                         break;
                     case ACTION_SEEK:
                         int seekPosition = intent.getIntExtra("seek_position", 0);
-                        seekTo(seekPosition);
+                        handler.obtainMessage(MSG_SEEK, seekPosition, 0).sendToTarget();
                         break;
                     case ACTION_REQUEST_STATE:
-                        broadcastCurrentState();
+                        handler.sendEmptyMessage(MSG_REQUEST_STATE);
                         break;
                     case ACTION_TOGGLE_SHUFFLE:
-                        toggleShuffle();
+                        handler.sendEmptyMessage(MSG_TOGGLE_SHUFFLE);
                         break;
                     case ACTION_TOGGLE_REPEAT:
-                        toggleRepeat();
+                        handler.sendEmptyMessage(MSG_TOGGLE_REPEAT);
                         break;
                     case ACTION_SET_PLAYLIST:
-                        ArrayList<MusicItem> newPlaylist = intent.getParcelableArrayListExtra("playlist");
-                        int startIndex = intent.getIntExtra("start_index", 0);
-                        if (newPlaylist != null) {
-                            setPlaylist(newPlaylist, startIndex);
+                        QueueSource queueSource = QueueSource.readFrom(intent);
+                        if (queueSource != null) {
+                            setQueue(queueSource);
+                        }
+                        break;
+                    case ACTION_PLAY_QUEUE:
+                        QueueSource playSource = QueueSource.readFrom(intent);
+                        if (playSource != null) {
+                            playQueue(playSource,
+                                    intent.getIntExtra("shuffle_mode", MODE_UNCHANGED),
+                                    intent.getIntExtra("repeat_mode", MODE_UNCHANGED));
                         }
                         break;
                 }
@@ -265,6 +373,81 @@ public class MusicService extends Service implements
         return START_STICKY;
     }
 
+    private boolean handleCommand(Message msg) {
+        if (isServiceDestroyed) {
+            return true;
+        }
+
+        try {
+            switch (msg.what) {
+                case MSG_PLAY:
+                    if (msg.obj != null) {
+                        playMusic((MusicItem) msg.obj);
+                    } else {
+                        resumeMusic();
+                    }
+                    break;
+                case MSG_PAUSE:
+                    pauseMusic();
+                    break;
+                case MSG_TOGGLE_PLAY_PAUSE:
+                    togglePlayPause();
+                    break;
+                case MSG_NEXT:
+                    playNext();
+                    break;
+                case MSG_PREVIOUS:
+                    playPrevious();
+                    break;
+                case MSG_STOP:
+                    stopMusic();
+                    break;
+                case MSG_SEEK:
+                    seekTo(msg.arg1);
+                    break;
+                case MSG_REQUEST_STATE:
+                    publishState();
+                    break;
+                case MSG_TOGGLE_SHUFFLE:
+                    toggleShuffle();
+                    break;
+                case MSG_TOGGLE_REPEAT:
+                    toggleRepeat();
+                    break;
+                case MSG_SET_PLAYLIST:
+                    setQueueFromSource((QueueSource) msg.obj);
+                    break;
+                case MSG_PLAY_QUEUE:
+                    applyPlayQueue((QueueSource) msg.obj, msg.arg1, msg.arg2);
+                    break;
+                case MSG_RESTORE_SESSION:
+                    restoreSession((Library) msg.obj);
+                    break;
+                case MSG_AUDIO_FOCUS:
+                    handleAudioFocusChange(msg.arg1);
+                    break;
+                case MSG_RESHUFFLE:
+                    if (isShuffleEnabled && !queue.isEmpty()) {
+                        shufflePlaylist(currentIndex);
+                        publishShuffle();
+                        onQueueChanged();
+                    }
+                    break;
+                case MSG_SET_GAPLESS:
+                    applyGaplessEnabled(msg.arg1 != 0);
+                    break;
+                case MSG_SET_CROSSFADE:
+                    applyCrossfadeDuration(msg.arg1);
+                    break;
+                default:
+                    return false;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling playback command " + msg.what + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
     private boolean requestAudioFocus() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             audioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
@@ -273,7 +456,7 @@ public class MusicService extends Service implements
                             .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
                             .build())
                     .setAcceptsDelayedFocusGain(true)
-                    .setOnAudioFocusChangeListener(this)
+                    .setOnAudioFocusChangeListener(this, handler)
                     .build();
             return audioManager.requestAudioFocus(audioFocusRequest) == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
         } else {
@@ -290,18 +473,118 @@ public class MusicService extends Service implements
         }
     }
 
-    private void setPlaylist(List<MusicItem> newPlaylist, int startIndex) {
-        originalPlaylist.clear();
-        originalPlaylist.addAll(newPlaylist);
+    /**
+     * Replaces the queue with {@code source}, resolved against the shared library on the
+     * playback thread.
+     */
+    public void setQueue(QueueSource source) {
+        handler.obtainMessage(MSG_SET_PLAYLIST, source).sendToTarget();
+    }
+
+    /**
+     * Replaces the queue, applies the shuffle and repeat modes and starts the first track
+     * in one step on the playback thread. The new state is published once the track is
+     * prepared and playing.
+     *
+     * @param shuffleMode SHUFFLE_ON, SHUFFLE_OFF or MODE_UNCHANGED
+     * @param repeatMode  one of the REPEAT_ modes or MODE_UNCHANGED
+     */
+    public void playQueue(QueueSource source, int shuffleMode, int repeatMode) {
+        handler.obtainMessage(MSG_PLAY_QUEUE, shuffleMode, repeatMode, source).sendToTarget();
+    }
+
+    private void applyPlayQueue(QueueSource source, int shuffleMode, int repeatMode) {
+        Library library = LibraryRepository.getInstance(this).getCurrentLibrary();
+        QueueSource.Queue resolved = source.resolve(library);
+        if (resolved.getSongIds().length == 0) {
+            Log.w(TAG, "Queue source resolved to no songs");
+            return;
+        }
+
+        // Drop the old players first so installing the queue doesn't prepare a next
+        // track for a player that is about to go away.
+        releaseCurrentPlayer();
+
+        if (shuffleMode != MODE_UNCHANGED) {
+            isShuffleEnabled = shuffleMode == SHUFFLE_ON;
+        }
+        if (repeatMode != MODE_UNCHANGED) {
+            this.repeatMode = Math.max(REPEAT_OFF, Math.min(repeatMode, REPEAT_ONE));
+        }
+
+        setPlaylist(new PlayQueue(library, resolved.getSongIds()), resolved.getStartIndex());
+        playMusic(queue.get(currentIndex));
+    }
+
+    /**
+     * Rebuilds the queue, modes and position from the journal and prepares the current
+     * track paused, unless playback was started in the meantime.
+     */
+    private void restoreSession(Library library) {
+        if (currentSong != null || !queue.isEmpty()) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        PlaybackJournal.Session session = journal.read();
+        if (session == null) {
+            return;
+        }
+
+        PlayQueue restored = PlayQueue.restore(library, session.songIds, session.shuffle);
+        if (restored.isEmpty()) {
+            return;
+        }
+        if (session.shuffle != null && restored.getShuffle() == null) {
+            // Songs deleted since broke the recorded order; shuffle what is left afresh.
+            restored.shuffle(restored.indexOf(session.songId), random.nextLong());
+        }
+
+        queue = restored;
+        isShuffleEnabled = session.shuffle != null;
+        repeatMode = Math.max(REPEAT_OFF, Math.min(session.repeatMode, REPEAT_ONE));
+        currentIndex = Math.max(0, queue.indexOf(session.songId));
+        currentSong = queue.get(currentIndex);
+
+        boolean isSameSong = currentSong.getId() == session.songId;
+        try {
+            // Hand the idle player from onCreate back to the pool before taking one.
+            releaseCurrentPlayer();
+            initializeMediaPlayer();
+            mediaPlayer.setDataSource(this, Uri.parse(currentSong.getPath()));
+            restorePositionMs = isSameSong ? session.positionMs : 0;
+            mediaPlayer.prepareAsync();
+        } catch (IOException e) {
+            Log.e(TAG, "IOException restoring session: " + e.getMessage(), e);
+        }
+        // Start a fresh journal from the restored state, which later records build on.
+        publishQueue();
 
-        playlist.clear();
-        playlist.addAll(newPlaylist);
+        Log.d(TAG, "Restored session of " + queue.size() + " songs in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        updatePlaybackState();
+        publishState();
+    }
 
+    private void setQueueFromSource(QueueSource source) {
+        Library library = LibraryRepository.getInstance(this).getCurrentLibrary();
+        QueueSource.Queue resolved = source.resolve(library);
+        if (resolved.getSongIds().length == 0) {
+            Log.w(TAG, "Queue source resolved to no songs");
+            return;
+        }
+        setPlaylist(new PlayQueue(library, resolved.getSongIds()), resolved.getStartIndex());
+    }
+
+    private void setPlaylist(PlayQueue newQueue, int startIndex) {
+        queue = newQueue;
         if (isShuffleEnabled) {
             shufflePlaylist(startIndex);
         } else {
-            currentIndex = Math.max(0, Math.min(startIndex, playlist.size() - 1));
+            currentIndex = Math.max(0, Math.min(startIndex, queue.size() - 1));
         }
+        publishQueue();
+        onQueueChanged();
     }
 
     private void playMusic(MusicItem musicItem) {
@@ -315,31 +598,23 @@ public class MusicService extends Service implements
         }
 
         try {
-            if (mediaPlayer != null) {
-                try {
-                    if (mediaPlayer.isPlaying()) {
-                        mediaPlayer.stop();
-                    }
-                    mediaPlayer.release();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error stopping previous media player: " + e.getMessage(), e);
-                }
-                mediaPlayer = null;
-            }
+            trackRequestedAt = SystemClock.elapsedRealtime();
+            releaseCurrentPlayer();
 
             currentSong = musicItem;
 
-            if (playlist.isEmpty()) {
-                ArrayList<MusicItem> singleSongPlaylist = new ArrayList<>();
-                singleSongPlaylist.add(musicItem);
-                setPlaylist(singleSongPlaylist, 0);
+            if (queue.isEmpty()) {
+                PlayQueue singleSongQueue = new PlayQueue(
+                        LibraryRepository.getInstance(this).getCurrentLibrary(), new long[0]);
+                singleSongQueue.append(musicItem);
+                setPlaylist(singleSongQueue, 0);
             } else {
                 updateCurrentIndex(musicItem);
 
                 if (currentIndex == -1) {
-                    playlist.add(musicItem);
-                    originalPlaylist.add(musicItem);
-                    currentIndex = playlist.size() - 1;
+                    currentIndex = queue.append(musicItem);
+                    queueSnapshot = queue.snapshot();
+                    journal.appendSong(musicItem.getId());
                 }
             }
 
@@ -354,13 +629,17 @@ public class MusicService extends Service implements
         }
     }
 
+    private void releaseCurrentPlayer() {
+        finishCrossfade();
+        releaseNextPlayer();
+        playerPool.recycle(mediaPlayer);
+        mediaPlayer = null;
+        isPrepared = false;
+        restorePositionMs = -1;
+    }
+
     private void updateCurrentIndex(MusicItem musicItem) {
-        for (int i = 0; i < playlist.size(); i++) {
-            if (playlist.get(i).getId() == musicItem.getId()) {
-                currentIndex = i;
-                break;
-            }
-        }
+        currentIndex = queue.indexOf(musicItem.getId());
     }
 
     private void resumeMusic() {
@@ -377,9 +656,12 @@ public class MusicService extends Service implements
             if (mediaPlayer != null && isPrepared && !mediaPlayer.isPlaying()) {
                 mediaPlayer.start();
                 isPlaying = true;
+                scheduleCrossfade();
+                handler.removeCallbacks(checkpointTicker);
+                handler.postDelayed(checkpointTicker, CHECKPOINT_INTERVAL_MS);
                 updatePlaybackState();
                 showNotification();
-                broadcastPlaybackState();
+                publishState();
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in resumeMusic: " + e.getMessage(), e);
@@ -393,34 +675,52 @@ public class MusicService extends Service implements
 
         try {
             if (mediaPlayer != null && isPlaying && mediaPlayer.isPlaying()) {
+                finishCrossfade();
+                handler.removeCallbacks(crossfadeTrigger);
                 mediaPlayer.pause();
                 isPlaying = false;
                 updatePlaybackState();
                 showNotification();
-                broadcastPlaybackState();
+                publishState();
+                saveCheckpoint();
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in pauseMusic: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Stops playback at the user's request; the session is over and is not restored.
+     */
     private void stopMusic() {
         if (isServiceDestroyed) {
             return;
         }
 
+        tearDownPlayback();
+        journal.clear();
+    }
+
+    /**
+     * Stops playback because another app took audio focus for good. The session is kept
+     * with a final checkpoint, so it comes back the next time the service starts.
+     */
+    private void stopForFocusLoss() {
+        if (isServiceDestroyed) {
+            return;
+        }
+
+        saveCheckpoint();
+        tearDownPlayback();
+    }
+
+    private void tearDownPlayback() {
         try {
-            if (mediaPlayer != null) {
-                try {
-                    if (mediaPlayer.isPlaying()) {
-                        mediaPlayer.stop();
-                    }
-                    mediaPlayer.release();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error releasing media player: " + e.getMessage(), e);
-                }
-                mediaPlayer = null;
-            }
+            finishCrossfade();
+            handler.removeCallbacks(crossfadeTrigger);
+            releaseNextPlayer();
+            playerPool.recycle(mediaPlayer);
+            mediaPlayer = null;
 
             isPlaying = false;
             isPrepared = false;
@@ -429,11 +729,12 @@ public class MusicService extends Service implements
 
             abandonAudioFocus();
             updatePlaybackState();
+            notifier.reset();
             stopForeground(true);
-            sendHideMiniPlayer();
+            publishState();
             stopSelf();
         } catch (Exception e) {
-            Log.e(TAG, "Error in stopMusic: " + e.getMessage(), e);
+            Log.e(TAG, "Error tearing down playback: " + e.getMessage(), e);
         }
     }
 
@@ -446,7 +747,7 @@ public class MusicService extends Service implements
     }
 
     private void playNext() {
-        if (isServiceDestroyed || playlist.isEmpty()) {
+        if (isServiceDestroyed || queue.isEmpty()) {
             return;
         }
 
@@ -461,7 +762,7 @@ public class MusicService extends Service implements
     }
 
     private void playPrevious() {
-        if (isServiceDestroyed || playlist.isEmpty()) {
+        if (isServiceDestroyed || queue.isEmpty()) {
             return;
         }
 
@@ -503,8 +804,10 @@ public class MusicService extends Service implements
         if (mediaPlayer != null && isPrepared) {
             try {
                 mediaPlayer.seekTo(position);
+                scheduleCrossfade();
                 updatePlaybackState();
                 showNotification();
+                saveCheckpoint();
                 Log.d(TAG, "Seeked to position: " + position);
             } catch (Exception e) {
                 Log.e(TAG, "Error seeking: " + e.getMessage(), e);
@@ -513,56 +816,54 @@ public class MusicService extends Service implements
     }
 
     private MusicItem getNextSong() {
-        if (playlist.isEmpty()) {
+        int index = peekNextIndex();
+        if (index < 0) {
             return null;
         }
 
-        if (currentIndex < 0 || currentIndex >= playlist.size()) {
-            currentIndex = 0;
-            return playlist.get(currentIndex);
-        }
+        currentIndex = index;
+        return queue.get(currentIndex);
+    }
 
-        int nextIndex = currentIndex + 1;
+    private int peekNextIndex() {
+        if (queue.isEmpty()) {
+            return -1;
+        }
 
-        if (nextIndex >= playlist.size()) {
-            if (repeatMode == REPEAT_ALL) {
-                nextIndex = 0;
-            } else {
-                return null;
-            }
+        if (currentIndex < 0 || currentIndex >= queue.size()) {
+            return 0;
         }
 
-        if (nextIndex >= 0 && nextIndex < playlist.size()) {
-            currentIndex = nextIndex;
-            return playlist.get(currentIndex);
-        } else {
-            return null;
+        int index = currentIndex + 1;
+        if (index >= queue.size()) {
+            return repeatMode == REPEAT_ALL ? 0 : -1;
         }
+        return index;
     }
 
     private MusicItem getPreviousSong() {
-        if (playlist.isEmpty()) {
+        if (queue.isEmpty()) {
             return null;
         }
 
-        if (currentIndex < 0 || currentIndex >= playlist.size()) {
-            currentIndex = playlist.size() - 1;
-            return playlist.get(currentIndex);
+        if (currentIndex < 0 || currentIndex >= queue.size()) {
+            currentIndex = queue.size() - 1;
+            return queue.get(currentIndex);
         }
 
         int prevIndex = currentIndex - 1;
 
         if (prevIndex < 0) {
             if (repeatMode == REPEAT_ALL) {
-                prevIndex = playlist.size() - 1;
+                prevIndex = queue.size() - 1;
             } else {
                 return null;
             }
         }
 
-        if (prevIndex >= 0 && prevIndex < playlist.size()) {
+        if (prevIndex >= 0 && prevIndex < queue.size()) {
             currentIndex = prevIndex;
-            return playlist.get(currentIndex);
+            return queue.get(currentIndex);
         } else {
             return null;
         }
@@ -603,9 +904,11 @@ public class MusicService extends Service implements
         } else {
             restoreOriginalOrder();
         }
+        publishShuffle();
+        onQueueChanged();
 
         updatePlaybackState();
-        broadcastShuffleState();
+        publishState();
     }
 
     private void toggleRepeat() {
@@ -615,52 +918,259 @@ public class MusicService extends Service implements
 
     private void setRepeatMode(int mode) {
         repeatMode = mode;
+        onQueueChanged();
         updatePlaybackState();
-        broadcastRepeatState();
+        publishState();
+        saveCheckpoint();
     }
 
     private void shufflePlaylist(int currentPlayingIndex) {
-        if (playlist.isEmpty()) return;
+        if (queue.isEmpty()) return;
 
-        MusicItem currentPlayingSong = null;
-        if (currentPlayingIndex >= 0 && currentPlayingIndex < playlist.size()) {
-            currentPlayingSong = playlist.get(currentPlayingIndex);
+        boolean hasCurrent = currentPlayingIndex >= 0 && currentPlayingIndex < queue.size();
+        // The current song goes to the front and only the rest is shuffled.
+        queue.shuffle(currentPlayingIndex, random.nextLong());
+        currentIndex = hasCurrent ? 0 : -1;
+    }
+
+    private void restoreOriginalOrder() {
+        long currentPlayingId = currentIndex >= 0 && currentIndex < queue.size()
+                ? queue.get(currentIndex).getId()
+                : -1;
+        queue.unshuffle();
+        currentIndex = currentPlayingId != -1 ? queue.indexOf(currentPlayingId) : -1;
+    }
+
+    public boolean isGaplessEnabled() {
+        return isGaplessEnabled;
+    }
+
+    public void setGaplessEnabled(boolean enabled) {
+        handler.obtainMessage(MSG_SET_GAPLESS, enabled ? 1 : 0, 0).sendToTarget();
+    }
+
+    private void applyGaplessEnabled(boolean enabled) {
+        isGaplessEnabled = enabled;
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .edit()
+                .putBoolean(PREF_GAPLESS, enabled)
+                .apply();
+        onQueueChanged();
+    }
+
+    public int getCrossfadeDuration() {
+        return crossfadeDurationMs;
+    }
+
+    /**
+     * Sets the crossfade between consecutive tracks, 0 to {@link #MAX_CROSSFADE_MS}; 0
+     * turns it off.
+     */
+    public void setCrossfadeDuration(int durationMs) {
+        handler.obtainMessage(MSG_SET_CROSSFADE, durationMs, 0).sendToTarget();
+    }
+
+    private void applyCrossfadeDuration(int durationMs) {
+        crossfadeDurationMs = Math.max(0, Math.min(durationMs, MAX_CROSSFADE_MS));
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .edit()
+                .putInt(PREF_CROSSFADE, crossfadeDurationMs)
+                .apply();
+        // A prepared next player is either chained or waiting for the fade; redo it.
+        releaseNextPlayer();
+        onQueueChanged();
+    }
+
+    private boolean isPreparingAhead() {
+        return isGaplessEnabled || crossfadeDurationMs > 0;
+    }
+
+    /**
+     * Called whenever the order, repeat mode or current track changes, so the player
+     * prepared ahead for the gapless handoff or the crossfade always holds the track
+     * getNextSong would pick.
+     */
+    private void onQueueChanged() {
+        if (mediaPlayer == null || !isPrepared) {
+            return;
         }
 
-        playlist.clear();
-        playlist.addAll(originalPlaylist);
+        try {
+            mediaPlayer.setLooping(isPreparingAhead() && repeatMode == REPEAT_ONE);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error setting looping: " + e.getMessage(), e);
+        }
 
-        if (currentPlayingSong != null) {
-            playlist.remove(currentPlayingSong);
+        int index = isPreparingAhead() && repeatMode != REPEAT_ONE ? peekNextIndex() : -1;
+        MusicItem upcoming = index >= 0 ? queue.get(index) : null;
+        if (upcoming != null && nextPlayer != null && nextSong != null
+                && nextSong.getId() == upcoming.getId()) {
+            nextIndex = index;
+            scheduleCrossfade();
+            return;
         }
 
-        Collections.shuffle(playlist, random);
+        releaseNextPlayer();
+        if (upcoming != null) {
+            prepareNextPlayer(upcoming, index);
+        }
+    }
 
-        if (currentPlayingSong != null) {
-            playlist.add(0, currentPlayingSong);
-            currentIndex = 0;
-        } else {
-            currentIndex = -1;
+    private void prepareNextPlayer(MusicItem song, int index) {
+        try {
+            isNextPrepared = false;
+            nextPlayer = playerPool.acquire();
+            nextSong = song;
+            nextIndex = index;
+            nextPlayer.setDataSource(this, Uri.parse(song.getPath()));
+            nextPlayer.prepareAsync();
+        } catch (Exception e) {
+            Log.e(TAG, "Error preparing next track: " + e.getMessage(), e);
+            releaseNextPlayer();
         }
     }
 
-    private void restoreOriginalOrder() {
-        MusicItem currentPlayingSong = null;
-        if (currentIndex >= 0 && currentIndex < playlist.size()) {
-            currentPlayingSong = playlist.get(currentIndex);
+    private void releaseNextPlayer() {
+        if (nextPlayer == null) {
+            return;
         }
 
-        playlist.clear();
-        playlist.addAll(originalPlaylist);
+        try {
+            if (mediaPlayer != null) {
+                mediaPlayer.setNextMediaPlayer(null);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error unchaining next player: " + e.getMessage(), e);
+        }
+        handler.removeCallbacks(crossfadeTrigger);
+        playerPool.recycle(nextPlayer);
+        nextPlayer = null;
+        nextSong = null;
+        nextIndex = -1;
+        isNextPrepared = false;
+    }
 
-        currentIndex = -1;
-        if (currentPlayingSong != null) {
-            for (int i = 0; i < playlist.size(); i++) {
-                if (playlist.get(i).getId() == currentPlayingSong.getId()) {
-                    currentIndex = i;
-                    break;
+    /**
+     * Makes the already started next player the current one and returns the player it
+     * replaced.
+     */
+    private MediaPlayer adoptNextPlayer() {
+        MediaPlayer previous = mediaPlayer;
+        mediaPlayer = nextPlayer;
+        currentSong = nextSong;
+        currentIndex = nextIndex;
+        nextPlayer = null;
+        nextSong = null;
+        nextIndex = -1;
+        isNextPrepared = false;
+
+        isPrepared = true;
+        isPlaying = true;
+        updateMediaMetadata();
+        updatePlaybackState();
+        showNotification();
+        publishState();
+        saveCheckpoint();
+        onQueueChanged();
+        return previous;
+    }
+
+    /**
+     * Arms a single callback for the moment the fade into the next track should begin.
+     * Nothing runs in between, so an idle crossfade costs nothing while the screen is off.
+     */
+    private void scheduleCrossfade() {
+        handler.removeCallbacks(crossfadeTrigger);
+        if (crossfadeDurationMs == 0 || !isPlaying || !isNextPrepared || mediaPlayer == null) {
+            return;
+        }
+
+        try {
+            long remaining = mediaPlayer.getDuration() - mediaPlayer.getCurrentPosition();
+            handler.postDelayed(crossfadeTrigger, Math.max(0, remaining - crossfadeDurationMs));
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error scheduling crossfade: " + e.getMessage(), e);
+        }
+    }
+
+    private final Runnable crossfadeTrigger = new Runnable() {
+        @Override
+        public void run() {
+            if (mediaPlayer == null || nextPlayer == null || !isNextPrepared || !isPlaying) {
+                return;
+            }
+
+            try {
+                int duration = mediaPlayer.getDuration();
+                long remaining = duration - mediaPlayer.getCurrentPosition();
+                if (remaining > crossfadeDurationMs + CROSSFADE_TICK_MS) {
+                    // The position moved since this was armed, e.g. a seek to the start.
+                    scheduleCrossfade();
+                    return;
+                }
+
+                nextPlayer.setVolume(0f, 0f);
+                nextPlayer.start();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Error starting crossfade: " + e.getMessage(), e);
+                return;
+            }
+
+            fadingOutPlayer = adoptNextPlayer();
+            crossfadeStartedAt = SystemClock.elapsedRealtime();
+            crossfadeLengthMs = Math.max(1, Math.min(crossfadeDurationMs,
+                    fadingOutPlayer.getDuration() - fadingOutPlayer.getCurrentPosition()));
+            handler.post(crossfadeTicker);
+        }
+    };
+
+    // One ticker drives both volumes for the whole fade, on an equal-power curve.
+    private final Runnable crossfadeTicker = new Runnable() {
+        @Override
+        public void run() {
+            if (fadingOutPlayer == null) {
+                return;
+            }
+
+            float progress = (SystemClock.elapsedRealtime() - crossfadeStartedAt)
+                    / (float) crossfadeLengthMs;
+            if (progress >= 1f) {
+                finishCrossfade();
+                return;
+            }
+
+            float fadeIn = (float) Math.sin(progress * Math.PI / 2);
+            float fadeOut = (float) Math.cos(progress * Math.PI / 2);
+            try {
+                fadingOutPlayer.setVolume(fadeOut, fadeOut);
+                if (mediaPlayer != null) {
+                    mediaPlayer.setVolume(fadeIn, fadeIn);
                 }
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Error ramping crossfade: " + e.getMessage(), e);
             }
+            handler.postDelayed(this, CROSSFADE_TICK_MS);
+        }
+    };
+
+    /**
+     * Ends a running fade at once: the outgoing track stops and the current one plays at
+     * full volume.
+     */
+    private void finishCrossfade() {
+        if (fadingOutPlayer == null) {
+            return;
+        }
+
+        handler.removeCallbacks(crossfadeTicker);
+        playerPool.recycle(fadingOutPlayer);
+        fadingOutPlayer = null;
+        try {
+            if (mediaPlayer != null) {
+                mediaPlayer.setVolume(1.0f, 1.0f);
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error restoring volume: " + e.getMessage(), e);
         }
     }
 
@@ -735,53 +1245,47 @@ public class MusicService extends Service implements
     private void showNotification() {
         if (currentSong == null) return;
 
-        Intent activityIntent = new Intent(this, MainActivity.class);
-        PendingIntent activityPendingIntent = PendingIntent.getActivity(
-                this, 0, activityIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_outline_music_note_24)
-                .setContentTitle(currentSong.getTitle())
-                .setContentText(currentSong.getArtist())
-                .setSubText(currentSong.getAlbum())
-                .setContentIntent(activityPendingIntent)
-                .setDeleteIntent(MediaButtonReceiver.buildMediaButtonPendingIntent(
-                        this, PlaybackStateCompat.ACTION_STOP))
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .setOnlyAlertOnce(true)
-                .addAction(R.drawable.ic_baseline_skip_previous_24, "Previous",
-                        MediaButtonReceiver.buildMediaButtonPendingIntent(
-                                this, PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS))
-                .addAction(
-                        isPlaying ? R.drawable.ic_baseline_pause_24 : R.drawable.ic_baseline_play_arrow_24,
-                        isPlaying ? "Pause" : "Play",
-                        MediaButtonReceiver.buildMediaButtonPendingIntent(
-                                this, isPlaying ? PlaybackStateCompat.ACTION_PAUSE : PlaybackStateCompat.ACTION_PLAY))
-                .addAction(R.drawable.ic_baseline_skip_next_24, "Next",
-                        MediaButtonReceiver.buildMediaButtonPendingIntent(
-                                this, PlaybackStateCompat.ACTION_SKIP_TO_NEXT))
-                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
-                        .setMediaSession(mediaSession.getSessionToken())
-                        .setShowActionsInCompactView(0, 1, 2)
-                        .setShowCancelButton(true)
-                        .setCancelButtonIntent(MediaButtonReceiver.buildMediaButtonPendingIntent(
-                                this, PlaybackStateCompat.ACTION_STOP)));
-
-        Bitmap albumArt = getAlbumArt(currentSong);
-        if (albumArt != null) {
-            builder.setLargeIcon(albumArt);
+        notifier.update(currentSong, isPlaying, getAlbumArt(currentSong));
+    }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                builder.setColorized(true);
-            }
+    /**
+     * The cached cover of {@code musicItem}. On a miss this returns null and decodes the
+     * cover in the background, refreshing the metadata and notification once it is in if
+     * the song is still current.
+     */
+    private Bitmap getAlbumArt(MusicItem musicItem) {
+        Bitmap cached = albumArtCache.get(musicItem);
+        if (cached != null || albumArtCache.isKnownMissing(musicItem)
+                || artLoadingSongId == musicItem.getId()) {
+            return cached;
         }
 
-        startForeground(NOTIFICATION_ID, builder.build());
+        artLoadingSongId = musicItem.getId();
+        artExecutor.execute(() -> {
+            Bitmap albumArt = decodeAlbumArt(musicItem);
+            albumArtCache.put(musicItem, albumArt);
+            handler.post(() -> {
+                if (artLoadingSongId == musicItem.getId()) {
+                    artLoadingSongId = -1;
+                }
+                MusicItem song = currentSong;
+                if (albumArt != null && !isServiceDestroyed
+                        && song != null && song.getId() == musicItem.getId()) {
+                    updateMediaMetadata();
+                    showNotification();
+                }
+            });
+        });
+        return null;
     }
 
-    private Bitmap getAlbumArt(MusicItem musicItem) {
+    private Bitmap decodeAlbumArt(MusicItem musicItem) {
+        if (musicItem.getAlbumId() >= 0) {
+            File file = AlbumArtStore.getInstance(this).getThumbnail(
+                    musicItem.getAlbumId(), musicItem.getPath(), AlbumArtStore.SIZE_MEDIUM);
+            return file != null ? BitmapFactory.decodeFile(file.getPath()) : null;
+        }
+
         try {
             MediaMetadataRetriever retriever = new MediaMetadataRetriever();
             retriever.setDataSource(this, Uri.parse(musicItem.getPath()));
@@ -835,26 +1339,88 @@ public class MusicService extends Service implements
 
     @Override
     public void onPrepared(MediaPlayer mp) {
+        if (mp == nextPlayer) {
+            isNextPrepared = true;
+            if (crossfadeDurationMs > 0) {
+                scheduleCrossfade();
+                return;
+            }
+            try {
+                if (mediaPlayer != null) {
+                    mediaPlayer.setNextMediaPlayer(nextPlayer);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error chaining next player: " + e.getMessage(), e);
+                releaseNextPlayer();
+            }
+            return;
+        }
+        if (mp != mediaPlayer) {
+            return;
+        }
+
         isPrepared = true;
-        updateMediaMetadata();
+        if (restorePositionMs >= 0) {
+            // Restored sessions come back paused where they left off.
+            mediaPlayer.seekTo((int) restorePositionMs);
+            restorePositionMs = -1;
+            updateMediaMetadata();
+            updatePlaybackState();
+            publishState();
+            onQueueChanged();
+            return;
+        }
+        // Start first; the metadata and its cover follow.
         resumeMusic();
-        broadcastMusicUpdate();
+        updateMediaMetadata();
+        if (trackRequestedAt > 0) {
+            Log.d(TAG, "Track started " + (SystemClock.elapsedRealtime() - trackRequestedAt)
+                    + " ms after request");
+            trackRequestedAt = 0;
+        }
+        publishState();
+        saveCheckpoint();
+        onQueueChanged();
     }
 
     @Override
     public void onCompletion(MediaPlayer mp) {
-        handleSongCompletion();
+        if (mp != mediaPlayer) {
+            return;
+        }
+
+        if (nextPlayer != null && nextPlayer.isPlaying()) {
+            // The chained player has already started on its own.
+            playerPool.recycle(adoptNextPlayer());
+        } else if (nextPlayer != null && isNextPrepared) {
+            // Ended before the crossfade could start; at least skip preparing again.
+            nextPlayer.start();
+            playerPool.recycle(adoptNextPlayer());
+        } else {
+            handleSongCompletion();
+        }
     }
 
     @Override
     public boolean onError(MediaPlayer mp, int what, int extra) {
         Log.e(TAG, "MediaPlayer error: " + what + ", " + extra);
-        isPrepared = false;
+        if (mp == nextPlayer) {
+            releaseNextPlayer();
+            return true;
+        }
+        if (mp == mediaPlayer) {
+            isPrepared = false;
+        }
         return false;
     }
 
     @Override
     public void onAudioFocusChange(int focusChange) {
+        // Before O the listener runs on the main thread.
+        handler.obtainMessage(MSG_AUDIO_FOCUS, focusChange, 0).sendToTarget();
+    }
+
+    private void handleAudioFocusChange(int focusChange) {
         switch (focusChange) {
             case AudioManager.AUDIOFOCUS_GAIN:
                 if (!isPlaying && isPrepared) {
@@ -865,7 +1431,7 @@ public class MusicService extends Service implements
                 }
                 break;
             case AudioManager.AUDIOFOCUS_LOSS:
-                stopMusic();
+                stopForFocusLoss();
                 break;
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
                 if (isPlaying) {
@@ -880,93 +1446,51 @@ public class MusicService extends Service implements
         }
     }
 
-    private void broadcastMusicUpdate() {
-        if (isServiceDestroyed || currentSong == null) {
-            return;
-        }
-
-        try {
-            Intent intent = new Intent(ACTION_MUSIC_UPDATED);
-            intent.setPackage(getPackageName());
-            intent.putExtra("music_item", currentSong);
-            intent.putExtra("is_playing", isPlaying);
-            sendBroadcast(intent);
-        } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting music update: " + e.getMessage(), e);
-        }
-    }
-
-    private void broadcastPlaybackState() {
-        if (isServiceDestroyed) {
-            return;
-        }
-
-        try {
-            Intent intent = new Intent(ACTION_PLAYBACK_STATE_CHANGED);
-            intent.setPackage(getPackageName());
-            intent.putExtra("is_playing", isPlaying);
-            sendBroadcast(intent);
-        } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting playback state: " + e.getMessage(), e);
-        }
+    /**
+     * Hands the current state to in-process observers. Other apps follow playback
+     * through the media session.
+     */
+    private void publishState() {
+        PlaybackStateBus.publish(
+                new PlaybackState(currentSong, isPlaying, isShuffleEnabled, repeatMode));
     }
 
-    private void broadcastShuffleState() {
-        if (isServiceDestroyed) {
-            return;
-        }
-
-        try {
-            Intent intent = new Intent(ACTION_SHUFFLE_STATE_CHANGED);
-            intent.setPackage(getPackageName());
-            intent.putExtra("is_shuffle_enabled", isShuffleEnabled);
-            sendBroadcast(intent);
-        } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting shuffle state: " + e.getMessage(), e);
-        }
+    public MediaPlayer getMediaPlayer() {
+        return mediaPlayer;
     }
 
-    private void broadcastRepeatState() {
-        if (isServiceDestroyed) {
-            return;
+    /**
+     * Position of the current track in milliseconds, or 0 while nothing is prepared.
+     * Safe to call from the UI thread.
+     */
+    public int getCurrentPosition() {
+        MediaPlayer player = mediaPlayer;
+        if (player == null) {
+            return 0;
         }
-
         try {
-            Intent intent = new Intent(ACTION_REPEAT_STATE_CHANGED);
-            intent.setPackage(getPackageName());
-            intent.putExtra("repeat_mode", repeatMode);
-            sendBroadcast(intent);
-        } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting repeat state: " + e.getMessage(), e);
+            return player.getCurrentPosition();
+        } catch (IllegalStateException e) {
+            return 0;
         }
     }
 
-    private void sendHideMiniPlayer() {
-        Intent intent = new Intent(ACTION_HIDE_MINI_PLAYER);
-        intent.setPackage(getPackageName());
-        sendBroadcast(intent);
-    }
-
-    private void broadcastCurrentState() {
-        if (isServiceDestroyed) {
-            return;
+    /**
+     * Duration of the current track in milliseconds, or 0 while nothing is prepared.
+     * Safe to call from the UI thread.
+     */
+    public int getDuration() {
+        MediaPlayer player = mediaPlayer;
+        if (player == null) {
+            return 0;
         }
-
         try {
-            if (currentSong != null) {
-                broadcastMusicUpdate();
-                broadcastShuffleState();
-                broadcastRepeatState();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting current state: " + e.getMessage(), e);
+            return player.getDuration();
+        } catch (IllegalStateException e) {
+            return 0;
         }
     }
 
-    public MediaPlayer getMediaPlayer() {
-        return mediaPlayer;
-    }
-
     public MusicItem getCurrentSong() {
         return currentSong;
     }
@@ -983,8 +1507,11 @@ public class MusicService extends Service implements
         return repeatMode;
     }
 
+    /**
+     * Read-only view of the queue in playing order; songs are looked up as they are read.
+     */
     public List<MusicItem> getPlaylist() {
-        return new ArrayList<>(playlist);
+        return queueSnapshot;
     }
 
     public int getCurrentIndex() {
@@ -992,26 +1519,59 @@ public class MusicService extends Service implements
     }
 
     public List<MusicItem> getUpcomingQueue() {
-        if (playlist.isEmpty() || currentIndex < 0 || currentIndex >= playlist.size()) {
-            return new ArrayList<>();
+        List<MusicItem> queue = queueSnapshot;
+        int index = currentIndex;
+        if (queue.isEmpty() || index < 0 || index >= queue.size()) {
+            return Collections.emptyList();
         }
 
-        List<MusicItem> upcomingQueue = new ArrayList<>();
-        for (int i = currentIndex + 1; i < playlist.size(); i++) {
-            upcomingQueue.add(playlist.get(i));
+        return queue.subList(index + 1, queue.size());
+    }
+
+    public void reshufflePlaylist() {
+        handler.sendEmptyMessage(MSG_RESHUFFLE);
+    }
+
+    /**
+     * Publishes a new queue and records it from scratch.
+     */
+    private void publishQueue() {
+        queueSnapshot = queue.snapshot();
+        if (!queue.isEmpty()) {
+            MusicItem song = currentSong;
+            journal.writeQueue(queue.copyIds(), queue.getShuffle(),
+                    song != null ? song.getId() : -1, checkpointPosition(), repeatMode);
         }
+    }
 
-        return upcomingQueue;
+    /**
+     * Publishes a shuffle or unshuffle of the current queue, recorded as its seed.
+     */
+    private void publishShuffle() {
+        queueSnapshot = queue.snapshot();
+        journal.setShuffle(queue.getShuffle());
     }
 
-    public void reshufflePlaylist() {
-        if (isShuffleEnabled && !playlist.isEmpty()) {
-            shufflePlaylist(currentIndex);
+    private void saveCheckpoint() {
+        MusicItem song = currentSong;
+        if (song != null) {
+            journal.checkpoint(song.getId(), checkpointPosition(), repeatMode);
         }
     }
 
+    private long checkpointPosition() {
+        return restorePositionMs >= 0 ? restorePositionMs : getCurrentPosition();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        albumArtCache.onTrimMemory(level);
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
+        requestRestore(null);
         return new MusicBinder();
     }
 
@@ -1020,33 +1580,30 @@ public class MusicService extends Service implements
         super.onDestroy();
 
         isServiceDestroyed = true;
+        LibraryRepository.getInstance(this).getLibrary().removeObserver(libraryObserver);
+        handler.removeCallbacksAndMessages(null);
+        handler.post(this::releasePlayback);
+        playbackThread.quitSafely();
+        artExecutor.shutdown();
+    }
 
+    private void releasePlayback() {
         try {
-            if (mediaPlayer != null) {
-                try {
-                    if (mediaPlayer.isPlaying()) {
-                        mediaPlayer.stop();
-                    }
-                    mediaPlayer.release();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error releasing media player in onDestroy: " + e.getMessage(), e);
-                } finally {
-                    mediaPlayer = null;
-                }
-            }
+            saveCheckpoint();
+            releaseNextPlayer();
+            fadingOutPlayer = null;
+            mediaPlayer = null;
+            playerPool.releaseAll();
 
             if (mediaSession != null) {
                 mediaSession.release();
                 mediaSession = null;
             }
 
-            if (handler != null) {
-                handler.removeCallbacksAndMessages(null);
-            }
-
             abandonAudioFocus();
 
             try {
+                notifier.reset();
                 stopForeground(true);
                 if (notificationManager != null) {
                     notificationManager.cancel(NOTIFICATION_ID);
@@ -1058,12 +1615,14 @@ public class MusicService extends Service implements
             currentSong = null;
             isPlaying = false;
             isPrepared = false;
-            playlist.clear();
-            originalPlaylist.clear();
+            queue = new PlayQueue(Library.EMPTY, new long[0]);
+            publishQueue();
             currentIndex = -1;
+            publishState();
+            journal.release();
 
         } catch (Exception e) {
-            Log.e(TAG, "Error in onDestroy: " + e.getMessage(), e);
+            Log.e(TAG, "Error releasing playback: " + e.getMessage(), e);
         }
     }
 }
\ No newline at end of file
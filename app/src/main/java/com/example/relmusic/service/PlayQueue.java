@@ -0,0 +1,255 @@
+package com.example.relmusic.service;
+
+import androidx.annotation.Nullable;
+
+import com.example.relmusic.data.Library;
+import com.example.relmusic.data.LongIntMap;
+import com.example.relmusic.ui.music.MusicItem;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The play queue as song ids in their original order, plus a permutation while shuffled.
+ * Songs are resolved to MusicItems only when one is needed, one row at a time from the
+ * library the queue was built from, so an all-songs queue costs a few bytes per song
+ * instead of lists of items, and random positions don't churn the song list's pages.
+ * Songs played from outside that library are kept as items.
+ *
+ * Only used on the playback thread. Ids and permutations are append-only and replaced
+ * rather than rewritten, which is what lets {@link #snapshot()} views stay immutable.
+ */
+final class PlayQueue {
+
+    /**
+     * How a shuffled order was derived, so it can be recorded and derived again: the
+     * first {@code count} songs are shuffled by a Random seeded with {@code seed}, after
+     * moving the song at original index {@code firstIndex} (if not -1) to the front.
+     * Songs appended later follow in order.
+     */
+    static final class Shuffle {
+        final long seed;
+        final int firstIndex;
+        final int count;
+
+        Shuffle(long seed, int firstIndex, int count) {
+            this.seed = seed;
+            this.firstIndex = firstIndex;
+            this.count = count;
+        }
+    }
+
+    private final Library library;
+    private long[] ids;
+    private int size;
+    // Song id to its first original index.
+    private final LongIntMap originalIndexes;
+    // While shuffled: playing position to original index, and the reverse.
+    private int[] order;
+    private int[] positions;
+    private Shuffle shuffle;
+    // Replaced, never modified, so snapshots can keep the one they were given.
+    private Map<Long, MusicItem> detached = Collections.emptyMap();
+
+    PlayQueue(Library library, long[] ids) {
+        this.library = library;
+        this.ids = ids;
+        size = ids.length;
+        originalIndexes = new LongIntMap(size);
+        // Walk backwards so a song queued twice maps to its first index.
+        for (int i = size - 1; i >= 0; i--) {
+            originalIndexes.put(ids[i], i);
+        }
+    }
+
+    /**
+     * Rebuilds a recorded queue. Songs no longer in {@code library} are dropped; if that
+     * happens, a recorded shuffle no longer applies and the queue comes back unshuffled.
+     */
+    static PlayQueue restore(Library library, long[] ids, @Nullable Shuffle shuffle) {
+        long[] kept = new long[ids.length];
+        int keptCount = 0;
+        for (long id : ids) {
+            if (library.indexOfSong(id) != LongIntMap.NO_VALUE) {
+                kept[keptCount++] = id;
+            }
+        }
+
+        if (keptCount < ids.length) {
+            return new PlayQueue(library, Arrays.copyOf(kept, keptCount));
+        }
+        PlayQueue queue = new PlayQueue(library, ids);
+        if (shuffle != null && shuffle.count <= ids.length && shuffle.firstIndex < shuffle.count) {
+            queue.applyShuffle(shuffle);
+        }
+        return queue;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The song at {@code position} in playing order.
+     */
+    MusicItem get(int position) {
+        return resolve(library, detached, ids[originalIndex(position)]);
+    }
+
+    /**
+     * Playing position of {@code songId}, or -1 if it isn't queued.
+     */
+    int indexOf(long songId) {
+        int index = originalIndexes.get(songId);
+        if (index == LongIntMap.NO_VALUE) {
+            return -1;
+        }
+        return positions != null ? positions[index] : index;
+    }
+
+    /**
+     * Adds {@code song} at the end of both orders.
+     *
+     * @return its playing position
+     */
+    int append(MusicItem song) {
+        long id = song.getId();
+        if (library.indexOfSong(id) == LongIntMap.NO_VALUE) {
+            Map<Long, MusicItem> copy = new HashMap<>(detached);
+            copy.put(id, song);
+            detached = copy;
+        }
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(16, size * 2));
+        }
+        ids[size] = id;
+        if (!originalIndexes.containsKey(id)) {
+            originalIndexes.put(id, size);
+        }
+        if (order != null) {
+            if (size == order.length) {
+                order = Arrays.copyOf(order, Math.max(16, size * 2));
+                positions = Arrays.copyOf(positions, order.length);
+            }
+            order[size] = size;
+            positions[size] = size;
+        }
+        return size++;
+    }
+
+    /**
+     * Shuffles the whole queue, keeping the song at {@code currentPosition} (if valid)
+     * first.
+     */
+    void shuffle(int currentPosition, long seed) {
+        int firstIndex = currentPosition >= 0 && currentPosition < size
+                ? originalIndex(currentPosition)
+                : -1;
+        applyShuffle(new Shuffle(seed, firstIndex, size));
+    }
+
+    void unshuffle() {
+        order = null;
+        positions = null;
+        shuffle = null;
+    }
+
+    /**
+     * How the current order was shuffled, or null while in original order.
+     */
+    @Nullable
+    Shuffle getShuffle() {
+        return shuffle;
+    }
+
+    long[] copyIds() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    long[] copyPlayingIds() {
+        long[] playingIds = new long[size];
+        for (int position = 0; position < size; position++) {
+            playingIds[position] = ids[originalIndex(position)];
+        }
+        return playingIds;
+    }
+
+    /**
+     * Read-only view of the queue in its current playing order, unaffected by later
+     * changes and safe to read from any thread.
+     */
+    List<MusicItem> snapshot() {
+        Library library = this.library;
+        long[] ids = this.ids;
+        int[] order = this.order;
+        int size = this.size;
+        Map<Long, MusicItem> detached = this.detached;
+        return new AbstractList<MusicItem>() {
+            @Override
+            public MusicItem get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return resolve(library, detached, ids[order != null ? order[index] : index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int originalIndex(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+        return order != null ? order[position] : position;
+    }
+
+    private void applyShuffle(Shuffle shuffle) {
+        int[] newOrder = new int[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            newOrder[i] = i;
+        }
+
+        int from = 0;
+        if (shuffle.firstIndex >= 0) {
+            swap(newOrder, 0, shuffle.firstIndex);
+            from = 1;
+        }
+        Random random = new Random(shuffle.seed);
+        for (int i = shuffle.count - 1; i > from; i--) {
+            swap(newOrder, i, from + random.nextInt(i - from + 1));
+        }
+
+        int[] newPositions = new int[newOrder.length];
+        for (int position = 0; position < size; position++) {
+            newPositions[newOrder[position]] = position;
+        }
+        order = newOrder;
+        positions = newPositions;
+        this.shuffle = shuffle;
+    }
+
+    private static MusicItem resolve(Library library, Map<Long, MusicItem> detached, long id) {
+        int position = library.indexOfSong(id);
+        return position != LongIntMap.NO_VALUE ? library.songAt(position) : detached.get(id);
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        int swap = values[i];
+        values[i] = values[j];
+        values[j] = swap;
+    }
+}
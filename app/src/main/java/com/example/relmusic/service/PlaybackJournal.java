@@ -0,0 +1,300 @@
+package com.example.relmusic.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-disk record of the playback session, so the queue and position survive the process
+ * being killed.
+ *
+ * Layout: header (magic, version, queue size), the queue in original order as song ids,
+ * then any number of fixed-size records: checkpoints (current song id, position and
+ * repeat mode), shuffles (seed, first index and count, see {@link PlayQueue.Shuffle}),
+ * shuffle off, and songs appended to the queue. The ids are only rewritten for a new
+ * queue; everything else is appended, replayed in order on read, and the last complete
+ * checkpoint wins. Writes run on a background thread in submission order.
+ */
+class PlaybackJournal {
+
+    private static final String TAG = "PlaybackJournal";
+    private static final String FILE_NAME = "playback.session";
+    private static final int MAGIC = 0x52534553; // "RSES"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 3 * 4;
+    private static final int RECORD_BYTES = 4 + 8 + 8 + 4;
+    // The file is compacted back to the queue and its current state once this many
+    // records have piled up.
+    private static final int MAX_RECORDS = 2048;
+
+    private static final int RECORD_CHECKPOINT = 1;
+    private static final int RECORD_SHUFFLE = 2;
+    private static final int RECORD_SHUFFLE_OFF = 3;
+    private static final int RECORD_APPEND = 4;
+
+    static final class Session {
+        final long[] songIds;
+        @Nullable
+        final PlayQueue.Shuffle shuffle;
+        final long songId;
+        final long positionMs;
+        final int repeatMode;
+
+        Session(long[] songIds, @Nullable PlayQueue.Shuffle shuffle,
+                long songId, long positionMs, int repeatMode) {
+            this.songIds = songIds;
+            this.shuffle = shuffle;
+            this.songId = songId;
+            this.positionMs = positionMs;
+            this.repeatMode = repeatMode;
+        }
+    }
+
+    private final File file;
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    // Only touched on the executor thread; what the file currently describes.
+    private long[] songIds;
+    private int songCount;
+    private PlayQueue.Shuffle shuffle;
+    private int recordCount;
+    private long lastSongId = -1;
+    private long lastPositionMs = -1;
+    private int lastRepeatMode = -1;
+
+    PlaybackJournal(Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    PlaybackJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replaces the recorded queue.
+     */
+    void writeQueue(long[] songIds, @Nullable PlayQueue.Shuffle shuffle,
+                    long songId, long positionMs, int repeatMode) {
+        executorService.execute(() -> {
+            this.songIds = songIds;
+            songCount = songIds.length;
+            this.shuffle = shuffle;
+            rewrite(songId, positionMs, repeatMode);
+        });
+    }
+
+    /**
+     * Records that the queue was shuffled as described by {@code shuffle}, or put back in
+     * original order if it is null.
+     */
+    void setShuffle(@Nullable PlayQueue.Shuffle shuffle) {
+        executorService.execute(() -> {
+            if (songIds == null) {
+                return;
+            }
+            this.shuffle = shuffle;
+            if (shuffle != null) {
+                append(RECORD_SHUFFLE, shuffle.seed, shuffle.firstIndex, shuffle.count);
+            } else {
+                append(RECORD_SHUFFLE_OFF, 0, 0, 0);
+            }
+        });
+    }
+
+    /**
+     * Records {@code songId} being added at the end of the queue.
+     */
+    void appendSong(long songId) {
+        executorService.execute(() -> {
+            if (songIds == null) {
+                return;
+            }
+            if (songCount == songIds.length) {
+                songIds = Arrays.copyOf(songIds, Math.max(16, songCount * 2));
+            }
+            songIds[songCount++] = songId;
+            append(RECORD_APPEND, songId, 0, 0);
+        });
+    }
+
+    void checkpoint(long songId, long positionMs, int repeatMode) {
+        executorService.execute(() -> {
+            if (songIds == null) {
+                return;
+            }
+            if (songId == lastSongId && positionMs == lastPositionMs
+                    && repeatMode == lastRepeatMode) {
+                return;
+            }
+            lastSongId = songId;
+            lastPositionMs = positionMs;
+            lastRepeatMode = repeatMode;
+            append(RECORD_CHECKPOINT, songId, positionMs, repeatMode);
+        });
+    }
+
+    /**
+     * Forgets the session, e.g. after the user stopped playback.
+     */
+    void clear() {
+        executorService.execute(() -> {
+            songIds = null;
+            shuffle = null;
+            lastSongId = -1;
+            file.delete();
+        });
+    }
+
+    /**
+     * Finishes pending writes in the background and stops accepting new ones.
+     */
+    void release() {
+        executorService.shutdown();
+    }
+
+    /**
+     * Blocks until the writes submitted so far have finished.
+     */
+    @VisibleForTesting
+    void awaitWrites() throws InterruptedException, ExecutionException {
+        executorService.submit(() -> { }).get();
+    }
+
+    /**
+     * Reads the recorded session, or null if there is none. Runs on the calling thread.
+     */
+    @Nullable
+    Session read() {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (FileInputStream in = new FileInputStream(file);
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_BYTES
+                    || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            int count = buffer.getInt();
+            long[] ids = new long[count];
+            buffer.asLongBuffer().get(ids);
+            buffer.position(buffer.position() + count * 8);
+
+            PlayQueue.Shuffle shuffle = null;
+            boolean hasCheckpoint = false;
+            long songId = -1;
+            long positionMs = 0;
+            int repeatMode = 0;
+            // A record cut short by process death is simply ignored.
+            while (buffer.remaining() >= RECORD_BYTES) {
+                int type = buffer.getInt();
+                long a = buffer.getLong();
+                long b = buffer.getLong();
+                int c = buffer.getInt();
+                switch (type) {
+                    case RECORD_CHECKPOINT:
+                        hasCheckpoint = true;
+                        songId = a;
+                        positionMs = b;
+                        repeatMode = c;
+                        break;
+                    case RECORD_SHUFFLE:
+                        shuffle = new PlayQueue.Shuffle(a, (int) b, c);
+                        break;
+                    case RECORD_SHUFFLE_OFF:
+                        shuffle = null;
+                        break;
+                    case RECORD_APPEND:
+                        if (count == ids.length) {
+                            ids = Arrays.copyOf(ids, Math.max(16, count * 2));
+                        }
+                        ids[count++] = a;
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+            }
+            if (!hasCheckpoint) {
+                return null;
+            }
+
+            return new Session(count < ids.length ? Arrays.copyOf(ids, count) : ids, shuffle,
+                    songId, positionMs, repeatMode);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable playback session: " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    private void append(int type, long a, long b, int c) {
+        if (recordCount >= MAX_RECORDS) {
+            rewrite(lastSongId, lastPositionMs, lastRepeatMode);
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true), RECORD_BYTES))) {
+            writeRecord(out, type, a, b, c);
+        } catch (IOException e) {
+            Log.e(TAG, "Error appending playback record: " + e.getMessage(), e);
+        }
+    }
+
+    private void rewrite(long songId, long positionMs, int repeatMode) {
+        File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(songCount);
+            for (int i = 0; i < songCount; i++) {
+                out.writeLong(songIds[i]);
+            }
+            recordCount = 0;
+            if (shuffle != null) {
+                writeRecord(out, RECORD_SHUFFLE, shuffle.seed, shuffle.firstIndex, shuffle.count);
+            }
+            writeRecord(out, RECORD_CHECKPOINT, songId, positionMs, repeatMode);
+            lastSongId = songId;
+            lastPositionMs = positionMs;
+            lastRepeatMode = repeatMode;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing playback session: " + e.getMessage(), e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Error replacing playback session");
+            tempFile.delete();
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, int type, long a, long b, int c)
+            throws IOException {
+        out.writeInt(type);
+        out.writeLong(a);
+        out.writeLong(b);
+        out.writeInt(c);
+        recordCount++;
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.relmusic.service;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.media.session.MediaButtonReceiver;
+
+import com.example.relmusic.MainActivity;
+import com.example.relmusic.R;
+import com.example.relmusic.ui.music.MusicItem;
+
+import java.util.Objects;
+
+/**
+ * Posts the playback notification only when what it shows changes. Seeks and repeated
+ * play/pause requests for the same state are dropped, and real changes arriving faster
+ * than {@link #MIN_UPDATE_INTERVAL_MS} are coalesced into one update with the latest
+ * state. The service goes foreground with the first post; later posts only notify.
+ */
+class PlaybackNotifier {
+
+    private static final String TAG = "PlaybackNotifier";
+    private static final long MIN_UPDATE_INTERVAL_MS = 500;
+
+    private final Service service;
+    private final NotificationManager notificationManager;
+    private final Handler handler;
+    private final String channelId;
+    private final int notificationId;
+    private final MediaSessionCompat.Token sessionToken;
+
+    private final PendingIntent contentIntent;
+    private final PendingIntent previousIntent;
+    private final PendingIntent playIntent;
+    private final PendingIntent pauseIntent;
+    private final PendingIntent nextIntent;
+    private final PendingIntent stopIntent;
+
+    // What the posted notification currently shows.
+    private MusicItem postedSong;
+    private boolean postedPlaying;
+    private Bitmap postedArt;
+    private boolean isForeground;
+    private long lastPostAt;
+
+    private MusicItem pendingSong;
+    private boolean pendingPlaying;
+    private Bitmap pendingArt;
+    private boolean isFlushScheduled;
+
+    PlaybackNotifier(Service service, NotificationManager notificationManager, Handler handler,
+                     String channelId, int notificationId, MediaSessionCompat.Token sessionToken) {
+        this.service = service;
+        this.notificationManager = notificationManager;
+        this.handler = handler;
+        this.channelId = channelId;
+        this.notificationId = notificationId;
+        this.sessionToken = sessionToken;
+
+        Intent activityIntent = new Intent(service, MainActivity.class);
+        contentIntent = PendingIntent.getActivity(
+                service, 0, activityIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        previousIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(
+                service, PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS);
+        playIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(
+                service, PlaybackStateCompat.ACTION_PLAY);
+        pauseIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(
+                service, PlaybackStateCompat.ACTION_PAUSE);
+        nextIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(
+                service, PlaybackStateCompat.ACTION_SKIP_TO_NEXT);
+        stopIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(
+                service, PlaybackStateCompat.ACTION_STOP);
+    }
+
+    void update(MusicItem song, boolean isPlaying, Bitmap albumArt) {
+        pendingSong = song;
+        pendingPlaying = isPlaying;
+        pendingArt = albumArt;
+
+        if (isFlushScheduled) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long nextAllowed = lastPostAt + MIN_UPDATE_INTERVAL_MS;
+        if (!isForeground || now >= nextAllowed) {
+            flush();
+        } else {
+            isFlushScheduled = true;
+            handler.postAtTime(flushRunnable, nextAllowed);
+        }
+    }
+
+    /**
+     * Drops any pending update and forgets the posted state; the caller removes the
+     * notification itself with stopForeground.
+     */
+    void reset() {
+        handler.removeCallbacks(flushRunnable);
+        isFlushScheduled = false;
+        isForeground = false;
+        postedSong = null;
+        postedArt = null;
+        pendingSong = null;
+        pendingArt = null;
+    }
+
+    private final Runnable flushRunnable = () -> {
+        isFlushScheduled = false;
+        flush();
+    };
+
+    private void flush() {
+        MusicItem song = pendingSong;
+        if (song == null) {
+            return;
+        }
+        if (isForeground && isSameAsPosted(song, pendingPlaying, pendingArt)) {
+            return;
+        }
+
+        try {
+            NotificationCompat.Builder builder = build(song, pendingPlaying, pendingArt);
+            if (isForeground) {
+                notificationManager.notify(notificationId, builder.build());
+            } else {
+                service.startForeground(notificationId, builder.build());
+                isForeground = true;
+            }
+
+            postedSong = song;
+            postedPlaying = pendingPlaying;
+            postedArt = pendingArt;
+            lastPostAt = SystemClock.uptimeMillis();
+        } catch (Exception e) {
+            Log.e(TAG, "Error posting notification: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean isSameAsPosted(MusicItem song, boolean isPlaying, Bitmap albumArt) {
+        return postedSong != null
+                && postedSong.getId() == song.getId()
+                && Objects.equals(postedSong.getTitle(), song.getTitle())
+                && Objects.equals(postedSong.getArtist(), song.getArtist())
+                && Objects.equals(postedSong.getAlbum(), song.getAlbum())
+                && postedPlaying == isPlaying
+                && postedArt == albumArt;
+    }
+
+    private NotificationCompat.Builder build(MusicItem song, boolean isPlaying, Bitmap albumArt) {
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(service, channelId)
+                .setSmallIcon(R.drawable.ic_outline_music_note_24)
+                .setContentTitle(song.getTitle())
+                .setContentText(song.getArtist())
+                .setSubText(song.getAlbum())
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(stopIntent)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setOnlyAlertOnce(true)
+                .addAction(R.drawable.ic_baseline_skip_previous_24, "Previous", previousIntent)
+                .addAction(
+                        isPlaying ? R.drawable.ic_baseline_pause_24 : R.drawable.ic_baseline_play_arrow_24,
+                        isPlaying ? "Pause" : "Play",
+                        isPlaying ? pauseIntent : playIntent)
+                .addAction(R.drawable.ic_baseline_skip_next_24, "Next", nextIntent)
+                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
+                        .setMediaSession(sessionToken)
+                        .setShowActionsInCompactView(0, 1, 2)
+                        .setShowCancelButton(true)
+                        .setCancelButtonIntent(stopIntent));
+
+        if (albumArt != null) {
+            builder.setLargeIcon(albumArt);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                builder.setColorized(true);
+            }
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.relmusic.service;
+
+import androidx.annotation.Nullable;
+
+import com.example.relmusic.ui.music.MusicItem;
+
+/**
+ * Immutable snapshot of what the player is doing, published through
+ * {@link PlaybackStateBus}. A null song means nothing is loaded and the mini players
+ * should be hidden.
+ */
+public final class PlaybackState {
+
+    public static final PlaybackState IDLE =
+            new PlaybackState(null, false, false, MusicService.REPEAT_OFF);
+
+    @Nullable
+    private final MusicItem song;
+    private final boolean isPlaying;
+    private final boolean isShuffleEnabled;
+    private final int repeatMode;
+
+    PlaybackState(@Nullable MusicItem song, boolean isPlaying, boolean isShuffleEnabled,
+                  int repeatMode) {
+        this.song = song;
+        this.isPlaying = isPlaying;
+        this.isShuffleEnabled = isShuffleEnabled;
+        this.repeatMode = repeatMode;
+    }
+
+    @Nullable
+    public MusicItem getSong() {
+        return song;
+    }
+
+    public boolean hasSong() {
+        return song != null;
+    }
+
+    public boolean isPlaying() {
+        return isPlaying;
+    }
+
+    public boolean isShuffleEnabled() {
+        return isShuffleEnabled;
+    }
+
+    public int getRepeatMode() {
+        return repeatMode;
+    }
+
+    /**
+     * Whether {@code other} shows a different song than this state.
+     */
+    public boolean isDifferentSong(@Nullable PlaybackState other) {
+        if (other == null || other.song == null || song == null) {
+            return other == null || other.song != song;
+        }
+        return other.song.getId() != song.getId();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.relmusic.service;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+/**
+ * In-process stream of {@link PlaybackState} snapshots from {@link MusicService}.
+ * Screens observe it with their lifecycle instead of registering broadcast receivers:
+ * nothing is parceled, the latest state is delivered as soon as a screen starts, and a
+ * burst of changes reaches the main thread as one update.
+ */
+public final class PlaybackStateBus {
+
+    private static final MutableLiveData<PlaybackState> state =
+            new MutableLiveData<>(PlaybackState.IDLE);
+
+    private PlaybackStateBus() {
+    }
+
+    public static LiveData<PlaybackState> getState() {
+        return state;
+    }
+
+    static void publish(PlaybackState playbackState) {
+        state.postValue(playbackState);
+    }
+}
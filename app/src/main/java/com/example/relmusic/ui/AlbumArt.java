@@ -0,0 +1,62 @@
+package com.example.relmusic.ui;
+
+import androidx.annotation.Nullable;
+
+import com.example.relmusic.ui.album.AlbumItem;
+import com.example.relmusic.ui.music.MusicItem;
+
+/**
+ * Glide model for an album cover served from the shared
+ * {@link com.example.relmusic.data.AlbumArtStore}. Two models for the same album are
+ * equal, so every song of an album shares one memory cache entry per size.
+ */
+public final class AlbumArt {
+
+    private final long albumId;
+    @Nullable
+    private final String songPath;
+
+    private AlbumArt(long albumId, @Nullable String songPath) {
+        this.albumId = albumId;
+        this.songPath = songPath;
+    }
+
+    /**
+     * @return the cover of {@code musicItem}'s album, or null if it has no album id
+     */
+    @Nullable
+    public static AlbumArt of(MusicItem musicItem) {
+        return musicItem.getAlbumId() >= 0
+                ? new AlbumArt(musicItem.getAlbumId(), musicItem.getPath())
+                : null;
+    }
+
+    /**
+     * @return the cover of {@code albumItem}, or null if it has no album id
+     */
+    @Nullable
+    public static AlbumArt of(AlbumItem albumItem) {
+        return albumItem.getAlbumId() >= 0
+                ? new AlbumArt(albumItem.getAlbumId(), albumItem.getSongPath())
+                : null;
+    }
+
+    public long getAlbumId() {
+        return albumId;
+    }
+
+    @Nullable
+    public String getSongPath() {
+        return songPath;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AlbumArt && ((AlbumArt) o).albumId == albumId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(albumId);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.relmusic.ui;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+import com.example.relmusic.data.AlbumArtStore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads {@link AlbumArt} from the {@link AlbumArtStore}, picking the smallest stored size
+ * that covers the target. Extraction, when the store doesn't have the cover yet, runs on
+ * Glide's source executor.
+ */
+final class AlbumArtLoader implements ModelLoader<AlbumArt, InputStream> {
+
+    private final AlbumArtStore store;
+
+    private AlbumArtLoader(AlbumArtStore store) {
+        this.store = store;
+    }
+
+    @Nullable
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull AlbumArt model, int width, int height,
+                                               @NonNull Options options) {
+        int size = width > 0 && height > 0
+                ? AlbumArtStore.sizeFor(Math.max(width, height))
+                : AlbumArtStore.SIZE_LARGE;
+        return new LoadData<>(new ObjectKey("album-art:" + model.getAlbumId() + ":" + size),
+                new Fetcher(store, model, size));
+    }
+
+    @Override
+    public boolean handles(@NonNull AlbumArt model) {
+        return model.getAlbumId() >= 0;
+    }
+
+    private static final class Fetcher implements DataFetcher<InputStream> {
+
+        private final AlbumArtStore store;
+        private final AlbumArt model;
+        private final int size;
+        private InputStream stream;
+
+        Fetcher(AlbumArtStore store, AlbumArt model, int size) {
+            this.store = store;
+            this.model = model;
+            this.size = size;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority,
+                             @NonNull DataCallback<? super InputStream> callback) {
+            File file = store.getThumbnail(model.getAlbumId(), model.getSongPath(), size);
+            if (file == null) {
+                callback.onLoadFailed(new FileNotFoundException(
+                        "No album art for album " + model.getAlbumId()));
+                return;
+            }
+
+            try {
+                stream = new FileInputStream(file);
+                callback.onDataReady(stream);
+            } catch (FileNotFoundException e) {
+                callback.onLoadFailed(e);
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+
+    static final class Factory implements ModelLoaderFactory<AlbumArt, InputStream> {
+
+        private final AlbumArtStore store;
+
+        Factory(AlbumArtStore store) {
+            this.store = store;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<AlbumArt, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new AlbumArtLoader(store);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.relmusic.ui;
+
+import android.content.Context;
+
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.RequestOptions;
+import com.example.relmusic.R;
+
+/**
+ * Pre-built Glide options for album art thumbnails. Every target of one kind decodes at
+ * the same fixed size, so the song list, the queue and the mini players share cached
+ * thumbnails, and preloads made for a list hit the same cache keys as its binds. The
+ * covers already come from the album art store on disk, so Glide doesn't cache them again.
+ * Main thread only.
+ */
+public final class AlbumArtOptions {
+
+    private static RequestOptions songThumbnail;
+    private static RequestOptions albumThumbnail;
+
+    private AlbumArtOptions() {
+    }
+
+    public static RequestOptions songThumbnail(Context context) {
+        if (songThumbnail == null) {
+            int size = context.getResources().getDimensionPixelSize(R.dimen.song_art_thumbnail_size);
+            songThumbnail = new RequestOptions()
+                    .override(size)
+                    .centerCrop()
+                    .diskCacheStrategy(DiskCacheStrategy.NONE)
+                    .placeholder(R.drawable.ic_outline_music_note_24)
+                    .error(R.drawable.ic_outline_music_note_24)
+                    .lock();
+        }
+        return songThumbnail;
+    }
+
+    public static RequestOptions albumThumbnail(Context context) {
+        if (albumThumbnail == null) {
+            int size = context.getResources().getDimensionPixelSize(R.dimen.album_art_thumbnail_size);
+            albumThumbnail = new RequestOptions()
+                    .override(size)
+                    .centerCrop()
+                    .diskCacheStrategy(DiskCacheStrategy.NONE)
+                    .placeholder(R.drawable.ic_outline_album_24)
+                    .error(R.drawable.ic_outline_album_24)
+                    .lock();
+        }
+        return albumThumbnail;
+    }
+}
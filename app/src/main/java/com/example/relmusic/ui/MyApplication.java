@@ -1,5 +1,6 @@
 package com.example.relmusic.ui;
 import android.app.Application;
+import com.example.relmusic.data.LibraryRepository;
 import com.google.android.material.color.DynamicColors;
 
 public class MyApplication extends Application {
@@ -7,5 +8,6 @@ public class MyApplication extends Application {
     public void onCreate() {
         super.onCreate();
         DynamicColors.applyToActivitiesIfAvailable(this);
+        LibraryRepository.getInstance(this).preloadSnapshot();
     }
 }
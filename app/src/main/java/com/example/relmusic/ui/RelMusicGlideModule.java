@@ -0,0 +1,48 @@
+package com.example.relmusic.ui;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+import com.example.relmusic.data.AlbumArtStore;
+
+import java.io.InputStream;
+
+/**
+ * App-wide Glide defaults. Album art is opaque, so it decodes as RGB_565 at half the
+ * memory of ARGB_8888. Only the downsampled result is cached on disk: the sources are
+ * local files, but decoding and resizing them again is what costs time while scrolling.
+ * {@link AlbumArt} models are served from the album art store instead.
+ */
+@GlideModule
+public final class RelMusicGlideModule extends AppGlideModule {
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        builder.setDefaultRequestOptions(new RequestOptions()
+                .format(DecodeFormat.PREFER_RGB_565)
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE));
+        builder.setLogLevel(Log.ERROR);
+    }
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide,
+                                   @NonNull Registry registry) {
+        registry.prepend(AlbumArt.class, InputStream.class,
+                new AlbumArtLoader.Factory(AlbumArtStore.getInstance(context)));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
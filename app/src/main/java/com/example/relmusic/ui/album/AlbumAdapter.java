@@ -1,6 +1,7 @@
 package com.example.relmusic.ui.album;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,20 +9,48 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
 import com.example.relmusic.R;
+import com.example.relmusic.ui.AlbumArt;
+import com.example.relmusic.ui.AlbumArtOptions;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
-public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHolder> {
+public class AlbumAdapter extends ListAdapter<AlbumItem, AlbumAdapter.AlbumViewHolder>
+        implements ListPreloader.PreloadModelProvider<AlbumItem> {
+
+    private static final int MAX_PRELOAD = 8;
+
+    private static final DiffUtil.ItemCallback<AlbumItem> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<AlbumItem>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull AlbumItem oldItem, @NonNull AlbumItem newItem) {
+                    return oldItem.getKey() == newItem.getKey();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull AlbumItem oldItem, @NonNull AlbumItem newItem) {
+                    return oldItem.getSongCount() == newItem.getSongCount()
+                            && oldItem.getArtistName().equals(newItem.getArtistName())
+                            && Objects.equals(oldItem.getAlbumArtUri(), newItem.getAlbumArtUri());
+                }
+            };
 
-    private List<AlbumItem> albumList;
     private Context context;
+    private final RequestManager requestManager;
     private OnAlbumItemClickListener listener;
 
     public interface OnAlbumItemClickListener {
@@ -29,9 +58,20 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
         void onPlayButtonClick(AlbumItem albumItem);
     }
 
-    public AlbumAdapter(List<AlbumItem> albumList, Context context) {
-        this.albumList = albumList;
+    public AlbumAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
+        this.requestManager = Glide.with(context);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Starts loading art for the albums about to scroll into {@code recyclerView}.
+     */
+    public void attachPreloader(RecyclerView recyclerView) {
+        int size = context.getResources().getDimensionPixelSize(R.dimen.album_art_thumbnail_size);
+        recyclerView.addOnScrollListener(new RecyclerViewPreloader<>(
+                requestManager, this, new FixedPreloadSizeProvider<>(size, size), MAX_PRELOAD));
     }
 
     public void setOnAlbumItemClickListener(OnAlbumItemClickListener listener) {
@@ -48,19 +88,13 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
 
     @Override
     public void onBindViewHolder(@NonNull AlbumViewHolder holder, int position) {
-        AlbumItem albumItem = albumList.get(position);
+        AlbumItem albumItem = getItem(position);
 
         holder.albumNameTextView.setText(albumItem.getAlbumName());
         holder.artistNameTextView.setText(albumItem.getArtistName());
         holder.songCountTextView.setText(albumItem.getFormattedSongCount());
 
-        Glide.with(context)
-                .load(albumItem.getAlbumArtUri())
-                .apply(new RequestOptions()
-                        .placeholder(R.drawable.ic_outline_album_24)
-                        .error(R.drawable.ic_outline_album_24)
-                        .centerCrop())
-                .into(holder.albumArtImageView);
+        loadArt(albumItem).into(holder.albumArtImageView);
 
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
@@ -76,8 +110,28 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
     }
 
     @Override
-    public int getItemCount() {
-        return albumList.size();
+    public long getItemId(int position) {
+        return getItem(position).getKey();
+    }
+
+    @NonNull
+    @Override
+    public List<AlbumItem> getPreloadItems(int position) {
+        if (position < 0 || position >= getItemCount()) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(getItem(position));
+    }
+
+    @Override
+    public RequestBuilder<?> getPreloadRequestBuilder(@NonNull AlbumItem item) {
+        return loadArt(item);
+    }
+
+    private RequestBuilder<Drawable> loadArt(AlbumItem albumItem) {
+        return requestManager
+                .load(AlbumArt.of(albumItem))
+                .apply(AlbumArtOptions.albumThumbnail(context));
     }
 
     public static class AlbumViewHolder extends RecyclerView.ViewHolder {
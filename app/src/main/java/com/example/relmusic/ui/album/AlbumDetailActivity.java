@@ -29,16 +29,21 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.RequestOptions;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 
 import com.example.relmusic.R;
+import com.example.relmusic.ui.AlbumArt;
+import com.example.relmusic.ui.AlbumArtOptions;
 import com.example.relmusic.ui.music.MusicAdapter;
 import com.example.relmusic.ui.music.MusicItem;
 import com.example.relmusic.ui.pages.nowplaying.NowPlayingActivity;
+import com.example.relmusic.data.QueueSource;
 import com.example.relmusic.service.MusicService;
+import com.example.relmusic.service.PlaybackStateBus;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -92,21 +97,6 @@ public class AlbumDetailActivity extends AppCompatActivity {
                 String action = intent.getAction();
                 if (action != null) {
                     switch (action) {
-                        case MusicService.ACTION_MUSIC_UPDATED:
-                            MusicItem musicItem = intent.getParcelableExtra("music_item");
-                            boolean playing = intent.getBooleanExtra("is_playing", false);
-                            if (musicItem != null) {
-                                showMiniPlayer(musicItem);
-                                updateMiniPlayerState(playing);
-                            }
-                            break;
-                        case MusicService.ACTION_PLAYBACK_STATE_CHANGED:
-                            boolean playingState = intent.getBooleanExtra("is_playing", false);
-                            updateMiniPlayerState(playingState);
-                            break;
-                        case MusicService.ACTION_HIDE_MINI_PLAYER:
-                            hideMiniPlayer();
-                            break;
                         case "MINI_PLAYER_VISIBILITY_CHANGED":
                             boolean isVisible = intent.getBooleanExtra("is_visible", false);
                             int height = intent.getIntExtra("height", 0);
@@ -153,6 +143,7 @@ public class AlbumDetailActivity extends AppCompatActivity {
             loadAlbumSongs();
 
             registerMusicUpdateReceiver();
+            observePlaybackState();
 
         } catch (Exception e) {
             Log.e(TAG, "Error in onCreate: " + e.getMessage(), e);
@@ -208,29 +199,12 @@ public class AlbumDetailActivity extends AppCompatActivity {
             int randomIndex = random.nextInt(albumSongs.size());
             MusicItem randomSong = albumSongs.get(randomIndex);
 
-            // Set the playlist with the random song as starting point
-            Intent playlistIntent = new Intent(this, MusicService.class);
-            playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-            playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(albumSongs));
-            playlistIntent.putExtra("start_index", randomIndex);
-            startService(playlistIntent);
-
-            // Small delay to ensure playlist is set
-            new android.os.Handler().postDelayed(() -> {
-                // Enable shuffle mode
-                Intent shuffleIntent = new Intent(this, MusicService.class);
-                shuffleIntent.setAction(MusicService.ACTION_TOGGLE_SHUFFLE);
-                startService(shuffleIntent);
-
-                // Another small delay to ensure shuffle is complete
-                new android.os.Handler().postDelayed(() -> {
-                    // Play the random song
-                    Intent playIntent = new Intent(this, MusicService.class);
-                    playIntent.setAction(MusicService.ACTION_PLAY);
-                    playIntent.putExtra("music_item", randomSong);
-                    startService(playIntent);
-                }, 50);
-            }, 50);
+            // Shuffle the playlist around the random song and start it in one command
+            Intent playIntent = new Intent(this, MusicService.class);
+            playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+            QueueSource.ofSongs(albumSongs, randomSong.getId()).writeTo(playIntent);
+            playIntent.putExtra("shuffle_mode", MusicService.SHUFFLE_ON);
+            startService(playIntent);
         });
     }
 
@@ -319,12 +293,14 @@ public class AlbumDetailActivity extends AppCompatActivity {
             albumTitleTextView.setText(albumItem.getAlbumName());
             albumArtistTextView.setText(albumItem.getArtistName());
 
-            if (albumItem.getAlbumArtUri() != null) {
+            AlbumArt albumArt = AlbumArt.of(albumItem);
+            if (albumArt != null) {
                 Glide.with(this)
-                        .load(albumItem.getAlbumArtUri())
+                        .load(albumArt)
                         .apply(new RequestOptions()
                                 .placeholder(R.drawable.ic_outline_album_24)
                                 .error(R.drawable.ic_outline_album_24)
+                                .diskCacheStrategy(DiskCacheStrategy.NONE)
                                 .centerCrop())
                         .into(albumArtImageView);
             } else {
@@ -337,7 +313,7 @@ public class AlbumDetailActivity extends AppCompatActivity {
 
     private void setupRecyclerView() {
         try {
-            musicAdapter = new MusicAdapter(albumSongs, this);
+            musicAdapter = new MusicAdapter(this);
             songsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
             songsRecyclerView.setAdapter(musicAdapter);
 
@@ -437,7 +413,7 @@ public class AlbumDetailActivity extends AppCompatActivity {
                 songCountTextView.setText(albumSongs.size() + " songs");
 
                 if (musicAdapter != null) {
-                    musicAdapter.notifyDataSetChanged();
+                    musicAdapter.submitList(new ArrayList<>(albumSongs));
                 }
 
                 updateUI();
@@ -458,9 +434,7 @@ public class AlbumDetailActivity extends AppCompatActivity {
     private void startMusicServiceAndOpenNowPlaying(MusicItem musicItem) {
         startMusicServiceWithPlaylist(musicItem);
 
-        new android.os.Handler().postDelayed(() -> {
-            openNowPlaying(musicItem);
-        }, 200);
+        openNowPlaying(musicItem);
     }
 
     private void startMusicService(MusicItem musicItem) {
@@ -472,27 +446,9 @@ public class AlbumDetailActivity extends AppCompatActivity {
             return;
         }
 
-        int selectedIndex = -1;
-        for (int i = 0; i < albumSongs.size(); i++) {
-            if (albumSongs.get(i).getId() == selectedSong.getId()) {
-                selectedIndex = i;
-                break;
-            }
-        }
-
-        if (selectedIndex == -1) {
-            selectedIndex = 0;
-        }
-
-        Intent playlistIntent = new Intent(this, MusicService.class);
-        playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-        playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(albumSongs));
-        playlistIntent.putExtra("start_index", selectedIndex);
-        startService(playlistIntent);
-
         Intent playIntent = new Intent(this, MusicService.class);
-        playIntent.setAction(MusicService.ACTION_PLAY);
-        playIntent.putExtra("music_item", selectedSong);
+        playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+        QueueSource.ofSongs(albumSongs, selectedSong.getId()).writeTo(playIntent);
         startService(playIntent);
     }
 
@@ -554,12 +510,6 @@ public class AlbumDetailActivity extends AppCompatActivity {
                     songsRecyclerView.getPaddingRight(),
                     isVisible ? height : 0
             );
-
-            songsRecyclerView.post(() -> {
-                if (songsRecyclerView.getAdapter() != null) {
-                    songsRecyclerView.getAdapter().notifyDataSetChanged();
-                }
-            });
         }
     }
 
@@ -568,9 +518,6 @@ public class AlbumDetailActivity extends AppCompatActivity {
         try {
             if (!isReceiverRegistered && musicUpdateReceiver != null) {
                 IntentFilter filter = new IntentFilter();
-                filter.addAction(MusicService.ACTION_MUSIC_UPDATED);
-                filter.addAction(MusicService.ACTION_PLAYBACK_STATE_CHANGED);
-                filter.addAction(MusicService.ACTION_HIDE_MINI_PLAYER);
                 filter.addAction("MINI_PLAYER_VISIBILITY_CHANGED");
 
                 if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
@@ -587,6 +534,30 @@ public class AlbumDetailActivity extends AppCompatActivity {
         }
     }
 
+    private void observePlaybackState() {
+        PlaybackStateBus.getState().observe(this, state -> {
+            if (isActivityDestroyed || isFinishing() || isDestroyed()) {
+                return;
+            }
+
+            try {
+                MusicItem song = state.getSong();
+                if (song == null) {
+                    hideMiniPlayer();
+                    return;
+                }
+
+                if (!isMiniPlayerVisible || currentPlayingItem == null
+                        || currentPlayingItem.getId() != song.getId()) {
+                    showMiniPlayer(song);
+                }
+                updateMiniPlayerState(state.isPlaying());
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling playback state: " + e.getMessage(), e);
+            }
+        });
+    }
+
     public void showMiniPlayer(MusicItem musicItem) {
         if (isActivityDestroyed || isFinishing() || isDestroyed() || musicItem == null) {
             return;
@@ -606,9 +577,8 @@ public class AlbumDetailActivity extends AppCompatActivity {
 
             try {
                 Glide.with(this)
-                        .load(musicItem.getAlbumArtUri())
-                        .placeholder(R.drawable.ic_outline_music_note_24)
-                        .error(R.drawable.ic_outline_music_note_24)
+                        .load(AlbumArt.of(musicItem))
+                        .apply(AlbumArtOptions.songThumbnail(this))
                         .into(miniAlbumArt);
 
             } catch (Exception e) {
@@ -690,20 +660,6 @@ public class AlbumDetailActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-
-        try {
-            Intent serviceIntent = new Intent(this, MusicService.class);
-            serviceIntent.setAction(MusicService.ACTION_REQUEST_STATE);
-            startService(serviceIntent);
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error in onResume: " + e.getMessage(), e);
-        }
-    }
-
     @Override
     protected void onPause() {
         super.onPause();
@@ -22,14 +22,14 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.relmusic.R;
+import com.example.relmusic.data.LibraryRepository;
+import com.example.relmusic.data.QueueSource;
 import com.example.relmusic.databinding.FragmentAlbumBinding;
 import com.example.relmusic.service.MusicService;
 import com.example.relmusic.ui.music.MusicItem;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -41,10 +41,7 @@ public class AlbumFragment extends Fragment {
     private ExecutorService executorService;
     private static final int PERMISSION_REQUEST_CODE = 124;
 
-    private static List<AlbumItem> cachedAlbumList = null;
-    private static long lastCacheTime = 0;
-    private static final long CACHE_DURATION = 5 * 60 * 1000;
-    private boolean isLoading = false;
+    private LibraryRepository libraryRepository;
 
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
@@ -55,11 +52,19 @@ public class AlbumFragment extends Fragment {
         View root = binding.getRoot();
 
         executorService = Executors.newSingleThreadExecutor();
+        libraryRepository = LibraryRepository.getInstance(requireContext());
         setupRecyclerView();
-        loadAlbumData();
 
         return root;
     }
+
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        observeLibrary();
+        checkPermissionAndLoadAlbums();
+    }
+
     private void openAlbumDetail(AlbumItem albumItem) {
         if (getContext() == null) return;
 
@@ -153,49 +158,30 @@ public class AlbumFragment extends Fragment {
     private void startAlbumPlayback(List<MusicItem> albumSongs) {
         if (getContext() == null || albumSongs.isEmpty()) return;
 
-        Intent playlistIntent = new Intent(getContext(), MusicService.class);
-        playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-        playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(albumSongs));
-        playlistIntent.putExtra("start_index", 0);
-        getContext().startService(playlistIntent);
-
         Intent playIntent = new Intent(getContext(), MusicService.class);
-        playIntent.setAction(MusicService.ACTION_PLAY);
-        playIntent.putExtra("music_item", albumSongs.get(0));
+        playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+        QueueSource.ofSongs(albumSongs, albumSongs.get(0).getId()).writeTo(playIntent);
         getContext().startService(playIntent);
 
     }
 
-    private void loadAlbumData() {
-        if (isCacheValid()) {
-            loadFromCache();
-            return;
+    private void observeLibrary() {
+        if (!libraryRepository.isLoaded()) {
+            showLoading(true);
         }
 
-        checkPermissionAndLoadAlbums();
-    }
-
-    private boolean isCacheValid() {
-        return cachedAlbumList != null &&
-                !cachedAlbumList.isEmpty() &&
-                (System.currentTimeMillis() - lastCacheTime) < CACHE_DURATION;
-    }
-
-    // In AlbumFragment.java
+        libraryRepository.getLibrary().observe(getViewLifecycleOwner(), library -> {
+            showLoading(false);
 
-    private void loadFromCache() {
-        if (binding != null && binding.albumRecyclerView != null) {
-            binding.albumRecyclerView.post(() -> {
-                albumList.clear();
-                albumList.addAll(cachedAlbumList);
+            if (albumAdapter != null) {
+                albumAdapter.submitList(library.getAlbums());
+            }
 
-                if (albumAdapter != null) {
-                    albumAdapter.notifyDataSetChanged();
-                }
+            albumList.clear();
+            albumList.addAll(library.getAlbums());
 
-                updateUI();
-            });
-        }
+            updateUI();
+        });
     }
 
     private void setupRecyclerView() {
@@ -210,8 +196,9 @@ public class AlbumFragment extends Fragment {
         GridLayoutManager gridLayoutManager = new GridLayoutManager(getContext(), 2);
         recyclerView.setLayoutManager(gridLayoutManager);
 
-        albumAdapter = new AlbumAdapter(albumList, getContext());
+        albumAdapter = new AlbumAdapter(getContext());
         recyclerView.setAdapter(albumAdapter);
+        albumAdapter.attachPreloader(recyclerView);
 
         albumAdapter.setOnAlbumItemClickListener(new AlbumAdapter.OnAlbumItemClickListener() {
             @Override
@@ -268,91 +255,7 @@ public class AlbumFragment extends Fragment {
     }
 
     private void loadAlbumsFromDevice() {
-        if (isLoading) return;
-
-        isLoading = true;
-        showLoading(true);
-
-        executorService.execute(() -> {
-            Map<String, AlbumItem> albumMap = new HashMap<>();
-            ContentResolver contentResolver = requireContext().getContentResolver();
-            Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-
-            String[] projection = {
-                    MediaStore.Audio.Media.ALBUM,
-                    MediaStore.Audio.Media.ARTIST,
-                    MediaStore.Audio.Media.ALBUM_ID,
-                    MediaStore.Audio.Media._ID
-            };
-
-            String selection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
-            String sortOrder = MediaStore.Audio.Media.ALBUM + " ASC";
-
-            try (Cursor cursor = contentResolver.query(musicUri, projection, selection, null, sortOrder)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
-                    int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                    int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-                    int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-
-                    do {
-                        String albumName = cursor.getString(albumColumn);
-                        String artistName = cursor.getString(artistColumn);
-                        long albumId = cursor.getLong(albumIdColumn);
-
-                        if (albumName != null && !albumName.trim().isEmpty()) {
-                            String albumKey = albumId + "_" + albumName;
-
-                            if (!albumMap.containsKey(albumKey)) {
-                                Uri albumArtUri = Uri.parse("content://media/external/audio/albumart/" + albumId);
-
-                                AlbumItem albumItem = new AlbumItem(
-                                        albumId,
-                                        albumName,
-                                        artistName != null ? artistName : "Unknown Artist",
-                                        albumArtUri,
-                                        1
-                                );
-                                albumMap.put(albumKey, albumItem);
-                            } else {
-                                AlbumItem existingAlbum = albumMap.get(albumKey);
-                                if (existingAlbum != null) {
-                                    existingAlbum.setSongCount(existingAlbum.getSongCount() + 1);
-                                }
-                            }
-                        }
-
-                    } while (cursor.moveToNext());
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                requireActivity().runOnUiThread(() -> {
-                    showLoading(false);
-                    isLoading = false;
-                    Toast.makeText(getContext(), "Error loading albums", Toast.LENGTH_SHORT).show();
-                });
-                return;
-            }
-
-            List<AlbumItem> tempAlbumList = new ArrayList<>(albumMap.values());
-
-            requireActivity().runOnUiThread(() -> {
-                showLoading(false);
-                isLoading = false;
-
-                cachedAlbumList = new ArrayList<>(tempAlbumList);
-                lastCacheTime = System.currentTimeMillis();
-
-                albumList.clear();
-                albumList.addAll(tempAlbumList);
-
-                if (albumAdapter != null) {
-                    albumAdapter.notifyDataSetChanged();
-                }
-
-                updateUI();
-            });
-        });
+        libraryRepository.loadIfNeeded();
     }
 
     private void updateUI() {
@@ -383,17 +286,6 @@ public class AlbumFragment extends Fragment {
         }
     }
 
-    public void refreshData() {
-        cachedAlbumList = null;
-        lastCacheTime = 0;
-        loadAlbumData();
-    }
-
-    public static void clearCache() {
-        cachedAlbumList = null;
-        lastCacheTime = 0;
-    }
-
     @Override
     public void onDestroyView() {
         super.onDestroyView();
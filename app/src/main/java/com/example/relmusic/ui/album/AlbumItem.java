@@ -5,26 +5,38 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 public class AlbumItem implements Parcelable {
+    private final long key;
     private long albumId;
     private String albumName;
     private String artistName;
     private Uri albumArtUri;
     private int songCount;
+    private String songPath;
 
-    public AlbumItem(long albumId, String albumName, String artistName, Uri albumArtUri, int songCount) {
+    /**
+     * @param key      identity of the album within the library, unique even where two
+     *                 albums share an album id
+     * @param songPath a song of the album to read the cover from; may be null
+     */
+    public AlbumItem(long key, long albumId, String albumName, String artistName, Uri albumArtUri,
+                     int songCount, String songPath) {
+        this.key = key;
         this.albumId = albumId;
         this.albumName = albumName != null ? albumName : "Unknown Album";
         this.artistName = artistName != null ? artistName : "Unknown Artist";
         this.albumArtUri = albumArtUri;
         this.songCount = songCount;
+        this.songPath = songPath;
     }
 
     protected AlbumItem(Parcel in) {
+        key = in.readLong();
         albumId = in.readLong();
         albumName = in.readString();
         artistName = in.readString();
         albumArtUri = in.readParcelable(Uri.class.getClassLoader());
         songCount = in.readInt();
+        songPath = in.readString();
     }
 
     public static final Creator<AlbumItem> CREATOR = new Creator<AlbumItem>() {
@@ -46,18 +58,22 @@ public class AlbumItem implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(key);
         dest.writeLong(albumId);
         dest.writeString(albumName);
         dest.writeString(artistName);
         dest.writeParcelable(albumArtUri, flags);
         dest.writeInt(songCount);
+        dest.writeString(songPath);
     }
 
+    public long getKey() { return key; }
     public long getAlbumId() { return albumId; }
     public String getAlbumName() { return albumName; }
     public String getArtistName() { return artistName; }
     public Uri getAlbumArtUri() { return albumArtUri; }
     public int getSongCount() { return songCount; }
+    public String getSongPath() { return songPath; }
 
     public void setAlbumId(long albumId) { this.albumId = albumId; }
     public void setAlbumName(String albumName) { this.albumName = albumName; }
@@ -8,6 +8,8 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
@@ -16,12 +18,24 @@ import com.example.relmusic.R;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 
-import java.util.List;
 import java.util.Locale;
 
-public class ArtistAdapter extends RecyclerView.Adapter<ArtistAdapter.ArtistViewHolder> {
+public class ArtistAdapter extends ListAdapter<ArtistItem, ArtistAdapter.ArtistViewHolder> {
+
+    private static final DiffUtil.ItemCallback<ArtistItem> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ArtistItem>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ArtistItem oldItem, @NonNull ArtistItem newItem) {
+                    return oldItem.getKey() == newItem.getKey();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ArtistItem oldItem, @NonNull ArtistItem newItem) {
+                    return oldItem.getSongCount() == newItem.getSongCount()
+                            && oldItem.getTotalDuration() == newItem.getTotalDuration();
+                }
+            };
 
-    private List<ArtistItem> artistList;
     private Context context;
     private OnArtistItemClickListener listener;
 
@@ -30,9 +44,10 @@ public class ArtistAdapter extends RecyclerView.Adapter<ArtistAdapter.ArtistView
         void onPlayButtonClick(ArtistItem artistItem);
     }
 
-    public ArtistAdapter(List<ArtistItem> artistList, Context context) {
-        this.artistList = artistList;
+    public ArtistAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
+        setHasStableIds(true);
     }
 
     public void setOnArtistItemClickListener(OnArtistItemClickListener listener) {
@@ -49,7 +64,7 @@ public class ArtistAdapter extends RecyclerView.Adapter<ArtistAdapter.ArtistView
 
     @Override
     public void onBindViewHolder(@NonNull ArtistViewHolder holder, int position) {
-        ArtistItem artistItem = artistList.get(position);
+        ArtistItem artistItem = getItem(position);
 
         holder.artistNameTextView.setText(artistItem.getArtistName());
         holder.songCountTextView.setText(artistItem.getFormattedSongCount());
@@ -70,8 +85,8 @@ public class ArtistAdapter extends RecyclerView.Adapter<ArtistAdapter.ArtistView
     }
 
     @Override
-    public int getItemCount() {
-        return artistList.size();
+    public long getItemId(int position) {
+        return getItem(position).getKey();
     }
 
     private String formatDuration(long durationMs) {
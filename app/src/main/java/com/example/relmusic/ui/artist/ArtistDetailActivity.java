@@ -35,10 +35,14 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 
 import com.example.relmusic.R;
+import com.example.relmusic.ui.AlbumArt;
+import com.example.relmusic.ui.AlbumArtOptions;
 import com.example.relmusic.ui.music.MusicAdapter;
 import com.example.relmusic.ui.music.MusicItem;
 import com.example.relmusic.ui.pages.nowplaying.NowPlayingActivity;
+import com.example.relmusic.data.QueueSource;
 import com.example.relmusic.service.MusicService;
+import com.example.relmusic.service.PlaybackStateBus;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -90,21 +94,6 @@ public class ArtistDetailActivity extends AppCompatActivity {
                 String action = intent.getAction();
                 if (action != null) {
                     switch (action) {
-                        case MusicService.ACTION_MUSIC_UPDATED:
-                            MusicItem musicItem = intent.getParcelableExtra("music_item");
-                            boolean playing = intent.getBooleanExtra("is_playing", false);
-                            if (musicItem != null) {
-                                showMiniPlayer(musicItem);
-                                updateMiniPlayerState(playing);
-                            }
-                            break;
-                        case MusicService.ACTION_PLAYBACK_STATE_CHANGED:
-                            boolean playingState = intent.getBooleanExtra("is_playing", false);
-                            updateMiniPlayerState(playingState);
-                            break;
-                        case MusicService.ACTION_HIDE_MINI_PLAYER:
-                            hideMiniPlayer();
-                            break;
                         case "MINI_PLAYER_VISIBILITY_CHANGED":
                             boolean isVisible = intent.getBooleanExtra("is_visible", false);
                             int height = intent.getIntExtra("height", 0);
@@ -151,6 +140,7 @@ public class ArtistDetailActivity extends AppCompatActivity {
             loadArtistSongs();
 
             registerMusicUpdateReceiver();
+            observePlaybackState();
 
         } catch (Exception e) {
             Log.e(TAG, "Error in onCreate: " + e.getMessage(), e);
@@ -204,29 +194,12 @@ public class ArtistDetailActivity extends AppCompatActivity {
             int randomIndex = random.nextInt(artistSongs.size());
             MusicItem randomSong = artistSongs.get(randomIndex);
 
-            // Set the playlist with the random song as starting point
-            Intent playlistIntent = new Intent(this, MusicService.class);
-            playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-            playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(artistSongs));
-            playlistIntent.putExtra("start_index", randomIndex);
-            startService(playlistIntent);
-
-            // Small delay to ensure playlist is set
-            new android.os.Handler().postDelayed(() -> {
-                // Enable shuffle mode
-                Intent shuffleIntent = new Intent(this, MusicService.class);
-                shuffleIntent.setAction(MusicService.ACTION_TOGGLE_SHUFFLE);
-                startService(shuffleIntent);
-
-                // Another small delay to ensure shuffle is complete
-                new android.os.Handler().postDelayed(() -> {
-                    // Play the random song
-                    Intent playIntent = new Intent(this, MusicService.class);
-                    playIntent.setAction(MusicService.ACTION_PLAY);
-                    playIntent.putExtra("music_item", randomSong);
-                    startService(playIntent);
-                }, 50);
-            }, 50);
+            // Shuffle the playlist around the random song and start it in one command
+            Intent playIntent = new Intent(this, MusicService.class);
+            playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+            QueueSource.ofSongs(artistSongs, randomSong.getId()).writeTo(playIntent);
+            playIntent.putExtra("shuffle_mode", MusicService.SHUFFLE_ON);
+            startService(playIntent);
         });
     }
 
@@ -332,7 +305,7 @@ public class ArtistDetailActivity extends AppCompatActivity {
 
     private void setupRecyclerView() {
         try {
-            musicAdapter = new MusicAdapter(artistSongs, this);
+            musicAdapter = new MusicAdapter(this);
             songsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
             songsRecyclerView.setAdapter(musicAdapter);
 
@@ -433,7 +406,7 @@ public class ArtistDetailActivity extends AppCompatActivity {
                 songCountTextView.setText(artistSongs.size() + " songs");
 
                 if (musicAdapter != null) {
-                    musicAdapter.notifyDataSetChanged();
+                    musicAdapter.submitList(new ArrayList<>(artistSongs));
                 }
 
                 updateUI();
@@ -454,9 +427,7 @@ public class ArtistDetailActivity extends AppCompatActivity {
     private void startMusicServiceAndOpenNowPlaying(MusicItem musicItem) {
         startMusicServiceWithPlaylist(musicItem);
 
-        new android.os.Handler().postDelayed(() -> {
-            openNowPlaying(musicItem);
-        }, 200);
+        openNowPlaying(musicItem);
     }
 
     private void startMusicService(MusicItem musicItem) {
@@ -468,27 +439,9 @@ public class ArtistDetailActivity extends AppCompatActivity {
             return;
         }
 
-        int selectedIndex = -1;
-        for (int i = 0; i < artistSongs.size(); i++) {
-            if (artistSongs.get(i).getId() == selectedSong.getId()) {
-                selectedIndex = i;
-                break;
-            }
-        }
-
-        if (selectedIndex == -1) {
-            selectedIndex = 0;
-        }
-
-        Intent playlistIntent = new Intent(this, MusicService.class);
-        playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-        playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(artistSongs));
-        playlistIntent.putExtra("start_index", selectedIndex);
-        startService(playlistIntent);
-
         Intent playIntent = new Intent(this, MusicService.class);
-        playIntent.setAction(MusicService.ACTION_PLAY);
-        playIntent.putExtra("music_item", selectedSong);
+        playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+        QueueSource.ofSongs(artistSongs, selectedSong.getId()).writeTo(playIntent);
         startService(playIntent);
     }
 
@@ -550,12 +503,6 @@ public class ArtistDetailActivity extends AppCompatActivity {
                     songsRecyclerView.getPaddingRight(),
                     isVisible ? height : 0
             );
-
-            songsRecyclerView.post(() -> {
-                if (songsRecyclerView.getAdapter() != null) {
-                    songsRecyclerView.getAdapter().notifyDataSetChanged();
-                }
-            });
         }
     }
 
@@ -564,9 +511,6 @@ public class ArtistDetailActivity extends AppCompatActivity {
         try {
             if (!isReceiverRegistered && musicUpdateReceiver != null) {
                 IntentFilter filter = new IntentFilter();
-                filter.addAction(MusicService.ACTION_MUSIC_UPDATED);
-                filter.addAction(MusicService.ACTION_PLAYBACK_STATE_CHANGED);
-                filter.addAction(MusicService.ACTION_HIDE_MINI_PLAYER);
                 filter.addAction("MINI_PLAYER_VISIBILITY_CHANGED");
 
                 if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
@@ -583,6 +527,30 @@ public class ArtistDetailActivity extends AppCompatActivity {
         }
     }
 
+    private void observePlaybackState() {
+        PlaybackStateBus.getState().observe(this, state -> {
+            if (isActivityDestroyed || isFinishing() || isDestroyed()) {
+                return;
+            }
+
+            try {
+                MusicItem song = state.getSong();
+                if (song == null) {
+                    hideMiniPlayer();
+                    return;
+                }
+
+                if (!isMiniPlayerVisible || currentPlayingItem == null
+                        || currentPlayingItem.getId() != song.getId()) {
+                    showMiniPlayer(song);
+                }
+                updateMiniPlayerState(state.isPlaying());
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling playback state: " + e.getMessage(), e);
+            }
+        });
+    }
+
     public void showMiniPlayer(MusicItem musicItem) {
         if (isActivityDestroyed || isFinishing() || isDestroyed() || musicItem == null) {
             return;
@@ -602,9 +570,8 @@ public class ArtistDetailActivity extends AppCompatActivity {
 
             try {
                 Glide.with(this)
-                        .load(musicItem.getAlbumArtUri())
-                        .placeholder(R.drawable.ic_outline_music_note_24)
-                        .error(R.drawable.ic_outline_music_note_24)
+                        .load(AlbumArt.of(musicItem))
+                        .apply(AlbumArtOptions.songThumbnail(this))
                         .into(miniAlbumArt);
 
             } catch (Exception e) {
@@ -686,20 +653,6 @@ public class ArtistDetailActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-
-        try {
-            Intent serviceIntent = new Intent(this, MusicService.class);
-            serviceIntent.setAction(MusicService.ACTION_REQUEST_STATE);
-            startService(serviceIntent);
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error in onResume: " + e.getMessage(), e);
-        }
-    }
-
     @Override
     protected void onPause() {
         super.onPause();
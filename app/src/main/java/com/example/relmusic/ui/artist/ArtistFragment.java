@@ -22,14 +22,14 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.relmusic.R;
+import com.example.relmusic.data.LibraryRepository;
+import com.example.relmusic.data.QueueSource;
 import com.example.relmusic.databinding.FragmentArtistBinding;
 import com.example.relmusic.service.MusicService;
 import com.example.relmusic.ui.music.MusicItem;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -41,10 +41,7 @@ public class ArtistFragment extends Fragment {
     private ExecutorService executorService;
     private static final int PERMISSION_REQUEST_CODE = 125;
 
-    private static List<ArtistItem> cachedArtistList = null;
-    private static long lastCacheTime = 0;
-    private static final long CACHE_DURATION = 5 * 60 * 1000;
-    private boolean isLoading = false;
+    private LibraryRepository libraryRepository;
 
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
@@ -55,12 +52,19 @@ public class ArtistFragment extends Fragment {
         View root = binding.getRoot();
 
         executorService = Executors.newSingleThreadExecutor();
+        libraryRepository = LibraryRepository.getInstance(requireContext());
         setupRecyclerView();
-        loadArtistData();
 
         return root;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        observeLibrary();
+        checkPermissionAndLoadArtists();
+    }
+
     private void openArtistDetail(ArtistItem artistItem) {
         if (getContext() == null) return;
 
@@ -155,48 +159,29 @@ public class ArtistFragment extends Fragment {
     private void startArtistPlayback(List<MusicItem> artistSongs) {
         if (getContext() == null || artistSongs.isEmpty()) return;
 
-        Intent playlistIntent = new Intent(getContext(), MusicService.class);
-        playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-        playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(artistSongs));
-        playlistIntent.putExtra("start_index", 0);
-        getContext().startService(playlistIntent);
-
         Intent playIntent = new Intent(getContext(), MusicService.class);
-        playIntent.setAction(MusicService.ACTION_PLAY);
-        playIntent.putExtra("music_item", artistSongs.get(0));
+        playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+        QueueSource.ofSongs(artistSongs, artistSongs.get(0).getId()).writeTo(playIntent);
         getContext().startService(playIntent);
     }
 
-    private void loadArtistData() {
-        if (isCacheValid()) {
-            loadFromCache();
-            return;
+    private void observeLibrary() {
+        if (!libraryRepository.isLoaded()) {
+            showLoading(true);
         }
 
-        checkPermissionAndLoadArtists();
-    }
-
-    private boolean isCacheValid() {
-        return cachedArtistList != null &&
-                !cachedArtistList.isEmpty() &&
-                (System.currentTimeMillis() - lastCacheTime) < CACHE_DURATION;
-    }
-
-    // In ArtistFragment.java
+        libraryRepository.getLibrary().observe(getViewLifecycleOwner(), library -> {
+            showLoading(false);
 
-    private void loadFromCache() {
-        if (binding != null && binding.artistRecyclerView != null) {
-            binding.artistRecyclerView.post(() -> {
-                artistList.clear();
-                artistList.addAll(cachedArtistList);
+            if (artistAdapter != null) {
+                artistAdapter.submitList(library.getArtists());
+            }
 
-                if (artistAdapter != null) {
-                    artistAdapter.notifyDataSetChanged();
-                }
+            artistList.clear();
+            artistList.addAll(library.getArtists());
 
-                updateUI();
-            });
-        }
+            updateUI();
+        });
     }
 
     private void setupRecyclerView() {
@@ -211,7 +196,7 @@ public class ArtistFragment extends Fragment {
         GridLayoutManager gridLayoutManager = new GridLayoutManager(getContext(), 1);
         recyclerView.setLayoutManager(gridLayoutManager);
 
-        artistAdapter = new ArtistAdapter(artistList, getContext());
+        artistAdapter = new ArtistAdapter(getContext());
         recyclerView.setAdapter(artistAdapter);
 
         artistAdapter.setOnArtistItemClickListener(new ArtistAdapter.OnArtistItemClickListener() {
@@ -270,91 +255,7 @@ public class ArtistFragment extends Fragment {
     }
 
     private void loadArtistsFromDevice() {
-        if (isLoading) return;
-
-        isLoading = true;
-        showLoading(true);
-
-        executorService.execute(() -> {
-            Map<String, ArtistItem> artistMap = new HashMap<>();
-            ContentResolver contentResolver = requireContext().getContentResolver();
-            Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-
-            String[] projection = {
-                    MediaStore.Audio.Media.ARTIST,
-                    MediaStore.Audio.Media.ALBUM_ID,
-                    MediaStore.Audio.Media._ID,
-                    MediaStore.Audio.Media.DURATION
-            };
-
-            String selection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
-            String sortOrder = MediaStore.Audio.Media.ARTIST + " ASC";
-
-            try (Cursor cursor = contentResolver.query(musicUri, projection, selection, null, sortOrder)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                    int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-                    int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-                    int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
-
-                    do {
-                        String artistName = cursor.getString(artistColumn);
-                        long albumId = cursor.getLong(albumIdColumn);
-                        long duration = cursor.getLong(durationColumn);
-
-                        if (artistName != null && !artistName.trim().isEmpty() &&
-                                !artistName.equals("<unknown>")) {
-
-                            if (!artistMap.containsKey(artistName)) {
-                                Uri albumArtUri = Uri.parse("content://media/external/audio/albumart/" + albumId);
-
-                                ArtistItem artistItem = new ArtistItem(
-                                        artistName,
-                                        albumArtUri,
-                                        1,
-                                        duration
-                                );
-                                artistMap.put(artistName, artistItem);
-                            } else {
-                                ArtistItem existingArtist = artistMap.get(artistName);
-                                if (existingArtist != null) {
-                                    existingArtist.setSongCount(existingArtist.getSongCount() + 1);
-                                    existingArtist.addDuration(duration);
-                                }
-                            }
-                        }
-
-                    } while (cursor.moveToNext());
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                requireActivity().runOnUiThread(() -> {
-                    showLoading(false);
-                    isLoading = false;
-                    Toast.makeText(getContext(), "Error loading artists", Toast.LENGTH_SHORT).show();
-                });
-                return;
-            }
-
-            List<ArtistItem> tempArtistList = new ArrayList<>(artistMap.values());
-
-            requireActivity().runOnUiThread(() -> {
-                showLoading(false);
-                isLoading = false;
-
-                cachedArtistList = new ArrayList<>(tempArtistList);
-                lastCacheTime = System.currentTimeMillis();
-
-                artistList.clear();
-                artistList.addAll(tempArtistList);
-
-                if (artistAdapter != null) {
-                    artistAdapter.notifyDataSetChanged();
-                }
-
-                updateUI();
-            });
-        });
+        libraryRepository.loadIfNeeded();
     }
 
     private void updateUI() {
@@ -385,17 +286,6 @@ public class ArtistFragment extends Fragment {
         }
     }
 
-    public void refreshData() {
-        cachedArtistList = null;
-        lastCacheTime = 0;
-        loadArtistData();
-    }
-
-    public static void clearCache() {
-        cachedArtistList = null;
-        lastCacheTime = 0;
-    }
-
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -5,19 +5,26 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 public class ArtistItem implements Parcelable {
+    private final long key;
     private String artistName;
     private Uri artistImageUri;
     private int songCount;
     private long totalDuration; // in milliseconds
 
     public ArtistItem(String artistName, Uri artistImageUri, int songCount) {
+        this.key = -1;
         this.artistName = artistName != null ? artistName : "Unknown Artist";
         this.artistImageUri = artistImageUri;
         this.songCount = songCount;
         this.totalDuration = 0;
     }
 
-    public ArtistItem(String artistName, Uri artistImageUri, int songCount, long totalDuration) {
+    /**
+     * @param key identity of the artist within the library
+     */
+    public ArtistItem(long key, String artistName, Uri artistImageUri, int songCount,
+                      long totalDuration) {
+        this.key = key;
         this.artistName = artistName != null ? artistName : "Unknown Artist";
         this.artistImageUri = artistImageUri;
         this.songCount = songCount;
@@ -25,6 +32,7 @@ public class ArtistItem implements Parcelable {
     }
 
     protected ArtistItem(Parcel in) {
+        key = in.readLong();
         artistName = in.readString();
         artistImageUri = in.readParcelable(Uri.class.getClassLoader());
         songCount = in.readInt();
@@ -50,12 +58,14 @@ public class ArtistItem implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(key);
         dest.writeString(artistName);
         dest.writeParcelable(artistImageUri, flags);
         dest.writeInt(songCount);
         dest.writeLong(totalDuration);
     }
 
+    public long getKey() { return key; }
     public String getArtistName() { return artistName; }
     public Uri getArtistImageUri() { return artistImageUri; }
     public int getSongCount() { return songCount; }
@@ -1,6 +1,9 @@
 package com.example.relmusic.ui.music;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,36 +11,132 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
 import com.example.relmusic.R;
+import com.example.relmusic.data.PagedSongList;
+import com.example.relmusic.ui.AlbumArt;
+import com.example.relmusic.ui.AlbumArtOptions;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHolder> {
+/**
+ * Song rows. Lists are diffed on a background thread like a ListAdapter would, but two
+ * library song lists are compared through their columns, so a library update never
+ * creates an item for every row of the old and new list.
+ */
+public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHolder>
+        implements ListPreloader.PreloadModelProvider<MusicItem> {
+
+    private static final int MAX_PRELOAD = 12;
+
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
+
+    public static final DiffUtil.ItemCallback<MusicItem> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<MusicItem>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull MusicItem oldItem, @NonNull MusicItem newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull MusicItem oldItem, @NonNull MusicItem newItem) {
+                    return Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                            && Objects.equals(oldItem.getArtist(), newItem.getArtist())
+                            && oldItem.getDuration() == newItem.getDuration()
+                            && oldItem.getAlbumId() == newItem.getAlbumId();
+                }
+            };
 
-    private List<MusicItem> musicList;
     private Context context;
+    private final RequestManager requestManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private OnMusicItemClickListener listener;
 
+    private List<MusicItem> songs = Collections.emptyList();
+    // Bumped on every submission so a diff that finishes late is dropped.
+    private int generation;
+
     public interface OnMusicItemClickListener {
         void onMusicItemClick(MusicItem musicItem);
         void onPlayButtonClick(MusicItem musicItem);
     }
 
-    public MusicAdapter(List<MusicItem> musicList, Context context) {
-        this.musicList = musicList;
+    public MusicAdapter(Context context) {
         this.context = context;
+        this.requestManager = Glide.with(context);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Starts loading art for the rows about to scroll into {@code recyclerView}.
+     */
+    public void attachPreloader(RecyclerView recyclerView) {
+        int size = context.getResources().getDimensionPixelSize(R.dimen.song_art_thumbnail_size);
+        recyclerView.addOnScrollListener(new RecyclerViewPreloader<>(
+                requestManager, this, new FixedPreloadSizeProvider<>(size, size), MAX_PRELOAD));
     }
 
     public void setOnMusicItemClickListener(OnMusicItemClickListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * Shows {@code list}, animating the difference to the current one. The list must not
+     * change afterwards.
+     */
+    public void submitList(List<MusicItem> list) {
+        List<MusicItem> newSongs = list != null ? list : Collections.<MusicItem>emptyList();
+        if (newSongs == songs) {
+            return;
+        }
+
+        int submission = ++generation;
+        List<MusicItem> oldSongs = songs;
+        if (oldSongs.isEmpty() || newSongs.isEmpty()) {
+            songs = newSongs;
+            if (!oldSongs.isEmpty()) {
+                notifyItemRangeRemoved(0, oldSongs.size());
+            }
+            if (!newSongs.isEmpty()) {
+                notifyItemRangeInserted(0, newSongs.size());
+            }
+            return;
+        }
+
+        diffExecutor.execute(() -> {
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(diffCallback(oldSongs, newSongs));
+            mainHandler.post(() -> {
+                if (submission == generation) {
+                    songs = newSongs;
+                    result.dispatchUpdatesTo(this);
+                }
+            });
+        });
+    }
+
+    public MusicItem getItem(int position) {
+        return songs.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return songs.size();
+    }
+
     @NonNull
     @Override
     public MusicViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -48,18 +147,12 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHol
 
     @Override
     public void onBindViewHolder(@NonNull MusicViewHolder holder, int position) {
-        MusicItem musicItem = musicList.get(position);
+        MusicItem musicItem = getItem(position);
 
         holder.titleTextView.setText(musicItem.getTitle());
         holder.artistTextView.setText(musicItem.getArtist());
 
-        Glide.with(context)
-                .load(musicItem.getAlbumArtUri())
-                .apply(new RequestOptions()
-                        .placeholder(R.drawable.ic_outline_music_note_24)
-                        .error(R.drawable.ic_outline_music_note_24)
-                        .centerCrop())
-                .into(holder.albumArtImageView);
+        loadArt(musicItem).into(holder.albumArtImageView);
 
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
@@ -75,8 +168,81 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHol
     }
 
     @Override
-    public int getItemCount() {
-        return musicList.size();
+    public long getItemId(int position) {
+        if (songs instanceof PagedSongList) {
+            return ((PagedSongList) songs).getId(position);
+        }
+        return getItem(position).getId();
+    }
+
+    @NonNull
+    @Override
+    public List<MusicItem> getPreloadItems(int position) {
+        if (position < 0 || position >= getItemCount()) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(getItem(position));
+    }
+
+    @Override
+    public RequestBuilder<?> getPreloadRequestBuilder(@NonNull MusicItem item) {
+        return loadArt(item);
+    }
+
+    private RequestBuilder<Drawable> loadArt(MusicItem musicItem) {
+        return requestManager
+                .load(AlbumArt.of(musicItem))
+                .apply(AlbumArtOptions.songThumbnail(context));
+    }
+
+    private static DiffUtil.Callback diffCallback(List<MusicItem> oldSongs, List<MusicItem> newSongs) {
+        if (oldSongs instanceof PagedSongList && newSongs instanceof PagedSongList) {
+            PagedSongList oldPaged = (PagedSongList) oldSongs;
+            PagedSongList newPaged = (PagedSongList) newSongs;
+            return new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldPaged.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return newPaged.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return oldPaged.getId(oldPosition) == newPaged.getId(newPosition);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return newPaged.hasSameContents(newPosition, oldPaged, oldPosition);
+                }
+            };
+        }
+
+        return new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldSongs.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newSongs.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return DIFF_CALLBACK.areItemsTheSame(oldSongs.get(oldPosition), newSongs.get(newPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return DIFF_CALLBACK.areContentsTheSame(oldSongs.get(oldPosition), newSongs.get(newPosition));
+            }
+        };
     }
 
     public static class MusicViewHolder extends RecyclerView.ViewHolder {
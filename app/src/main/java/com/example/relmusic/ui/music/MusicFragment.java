@@ -2,16 +2,12 @@ package com.example.relmusic.ui.music;
 
 import android.Manifest;
 import android.content.BroadcastReceiver;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Parcelable;
-import android.provider.MediaStore;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,28 +23,21 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.relmusic.MainActivity;
 import com.example.relmusic.R;
+import com.example.relmusic.data.Library;
+import com.example.relmusic.data.LibraryRepository;
+import com.example.relmusic.data.QueueSource;
 import com.example.relmusic.databinding.FragmentMusicBinding;
 import com.example.relmusic.service.MusicService;
 import com.example.relmusic.ui.pages.nowplaying.NowPlayingActivity;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
 public class MusicFragment extends Fragment {
 
     private FragmentMusicBinding binding;
     private MusicAdapter musicAdapter;
-    private List<MusicItem> musicList = new ArrayList<>();
-    private ExecutorService executorService;
+    private Library library = Library.EMPTY;
+    private LibraryRepository libraryRepository;
     private static final int PERMISSION_REQUEST_CODE = 123;
 
-    private static List<MusicItem> cachedMusicList = null;
-    private static long lastCacheTime = 0;
-    private static final long CACHE_DURATION = 5 * 60 * 1000;
-    private boolean isLoading = false;
-
     private BroadcastReceiver miniPlayerReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -64,12 +53,6 @@ public class MusicFragment extends Fragment {
                             recyclerView.getPaddingRight(),
                             isVisible ? height : 0
                     );
-
-                    recyclerView.post(() -> {
-                        if (recyclerView.getAdapter() != null) {
-                            recyclerView.getAdapter().notifyDataSetChanged();
-                        }
-                    });
                 }
             }
         }
@@ -83,13 +66,19 @@ public class MusicFragment extends Fragment {
         binding = FragmentMusicBinding.inflate(inflater, container, false);
         View root = binding.getRoot();
 
-        executorService = Executors.newSingleThreadExecutor();
+        libraryRepository = LibraryRepository.getInstance(requireContext());
         setupRecyclerView();
-        loadMusicData();
 
         return root;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        observeLibrary();
+        checkPermissionAndLoadMusic();
+    }
+
     private void setupRecyclerView() {
         RecyclerView recyclerView = binding.musicRecyclerView;
 
@@ -98,9 +87,10 @@ public class MusicFragment extends Fragment {
         recyclerView.setDrawingCacheEnabled(true);
         recyclerView.setDrawingCacheQuality(View.DRAWING_CACHE_QUALITY_HIGH);
 
-        musicAdapter = new MusicAdapter(musicList, getContext());
+        musicAdapter = new MusicAdapter(getContext());
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         recyclerView.setAdapter(musicAdapter);
+        musicAdapter.attachPreloader(recyclerView);
 
         musicAdapter.setOnMusicItemClickListener(new MusicAdapter.OnMusicItemClickListener() {
             @Override
@@ -115,43 +105,22 @@ public class MusicFragment extends Fragment {
         });
     }
 
-    private void loadMusicData() {
-        if (isCacheValid()) {
-            loadFromCache();
-            return;
-        }
-
-        checkPermissionAndLoadMusic();
-    }
-
+    private void observeLibrary() {
+        libraryRepository.getLibrary().observe(getViewLifecycleOwner(), library -> {
+            this.library = library;
 
-    private boolean isCacheValid() {
-        return cachedMusicList != null &&
-                !cachedMusicList.isEmpty() &&
-                (System.currentTimeMillis() - lastCacheTime) < CACHE_DURATION;
-    }
-
-    private void loadFromCache() {
-        if (binding != null && binding.musicRecyclerView != null) {
-            binding.musicRecyclerView.post(() -> {
-                musicList.clear();
-                musicList.addAll(cachedMusicList);
-
-                if (musicAdapter != null) {
-                    musicAdapter.notifyDataSetChanged();
-                }
+            if (musicAdapter != null) {
+                musicAdapter.submitList(library.getSongs());
+            }
 
-                updateUI();
-            });
-        }
+            updateUI();
+        });
     }
 
     private void startMusicServiceAndOpenNowPlaying(MusicItem musicItem) {
         startMusicServiceWithPlaylist(musicItem);
 
-        new android.os.Handler().postDelayed(() -> {
-            openNowPlaying(musicItem);
-        }, 200);
+        openNowPlaying(musicItem);
     }
 
     private void startMusicService(MusicItem musicItem) {
@@ -159,31 +128,13 @@ public class MusicFragment extends Fragment {
     }
 
     private void startMusicServiceWithPlaylist(MusicItem selectedSong) {
-        if (getContext() == null || musicList.isEmpty()) {
+        if (getContext() == null || library.isEmpty()) {
             return;
         }
 
-        int selectedIndex = -1;
-        for (int i = 0; i < musicList.size(); i++) {
-            if (musicList.get(i).getId() == selectedSong.getId()) {
-                selectedIndex = i;
-                break;
-            }
-        }
-
-        if (selectedIndex == -1) {
-            selectedIndex = 0;
-        }
-
-        Intent playlistIntent = new Intent(getContext(), MusicService.class);
-        playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-        playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(musicList));
-        playlistIntent.putExtra("start_index", selectedIndex);
-        getContext().startService(playlistIntent);
-
         Intent playIntent = new Intent(getContext(), MusicService.class);
-        playIntent.setAction(MusicService.ACTION_PLAY);
-        playIntent.putExtra("music_item", selectedSong);
+        playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+        QueueSource.allSongs(selectedSong.getId()).writeTo(playIntent);
         getContext().startService(playIntent);
     }
 
@@ -233,99 +184,13 @@ public class MusicFragment extends Fragment {
     }
 
     private void loadMusicFromDevice() {
-        if (isLoading) return;
-
-        isLoading = true;
-        showLoading(true);
-
-        executorService.execute(() -> {
-            List<MusicItem> tempMusicList = new ArrayList<>();
-
-            ContentResolver contentResolver = requireContext().getContentResolver();
-            Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-
-            String[] projection = {
-                    MediaStore.Audio.Media._ID,
-                    MediaStore.Audio.Media.TITLE,
-                    MediaStore.Audio.Media.ARTIST,
-                    MediaStore.Audio.Media.ALBUM,
-                    MediaStore.Audio.Media.DURATION,
-                    MediaStore.Audio.Media.DATA,
-                    MediaStore.Audio.Media.ALBUM_ID
-            };
-
-            String selection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
-            String sortOrder = MediaStore.Audio.Media.TITLE + " ASC";
-
-            try (Cursor cursor = contentResolver.query(musicUri, projection, selection, null, sortOrder)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-                    int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
-                    int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                    int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
-                    int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
-                    int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
-                    int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-
-                    do {
-                        long id = cursor.getLong(idColumn);
-                        String title = cursor.getString(titleColumn);
-                        String artist = cursor.getString(artistColumn);
-                        String album = cursor.getString(albumColumn);
-                        long duration = cursor.getLong(durationColumn);
-                        String path = cursor.getString(pathColumn);
-                        long albumId = cursor.getLong(albumIdColumn);
-
-                        Uri albumArtUri = Uri.parse("content://media/external/audio/albumart/" + albumId);
-
-                        MusicItem musicItem = new MusicItem(id, title, artist, album, duration, path, albumArtUri);
-                        tempMusicList.add(musicItem);
-
-                    } while (cursor.moveToNext());
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                requireActivity().runOnUiThread(() -> {
-                    showLoading(false);
-                    isLoading = false;
-                    Toast.makeText(getContext(), "Error loading music files", Toast.LENGTH_SHORT).show();
-                    showRefreshComplete(false);
-                });
-                return;
-            }
-
-            requireActivity().runOnUiThread(() -> {
-                showLoading(false);
-                isLoading = false;
-
-                cachedMusicList = new ArrayList<>(tempMusicList);
-                lastCacheTime = System.currentTimeMillis();
-
-                int previousSize = musicList.size();
-                musicList.clear();
-                musicList.addAll(tempMusicList);
-
-                if (musicAdapter != null) {
-                    musicAdapter.notifyDataSetChanged();
-                }
-
-                updateUI();
-                showRefreshComplete(true);
-
-                int newCount = tempMusicList.size();
-                if (newCount == previousSize && previousSize > 0) {
-                    Toast.makeText(getContext(),
-                            "Music library is up to date (" + newCount + " songs)",
-                            Toast.LENGTH_SHORT).show();
-                } 
-            });
-        });
+        libraryRepository.loadIfNeeded();
     }
 
     private void updateUI() {
         if (binding == null) return;
 
-        if (musicList.isEmpty()) {
+        if (library.isEmpty()) {
             binding.emptyState.setVisibility(View.VISIBLE);
             binding.musicRecyclerView.setVisibility(View.GONE);
         } else {
@@ -334,31 +199,6 @@ public class MusicFragment extends Fragment {
         }
     }
 
-    private void showLoading(boolean show) {
-        if (binding == null) return;
-    }
-
-    private void showRefreshComplete(boolean success) {
-        if (binding == null) return;
-    }
-
-    public void refreshData() {
-
-        cachedMusicList = null;
-        lastCacheTime = 0;
-
-        if (getContext() != null) {
-            Toast.makeText(getContext(), "Refreshing music library...", Toast.LENGTH_SHORT).show();
-        }
-
-        loadMusicData();
-    }
-
-    public static void clearCache() {
-        cachedMusicList = null;
-        lastCacheTime = 0;
-    }
-
     @Override
     public void onResume() {
         super.onResume();
@@ -370,10 +210,6 @@ public class MusicFragment extends Fragment {
             } else {
                 getActivity().registerReceiver(miniPlayerReceiver, filter);
             }
-
-            Intent requestStateIntent = new Intent(getActivity(), MusicService.class);
-            requestStateIntent.setAction(MusicService.ACTION_REQUEST_STATE);
-            getActivity().startService(requestStateIntent);
         }
     }
 
@@ -391,9 +227,6 @@ public class MusicFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-        }
         binding = null;
     }
 }
\ No newline at end of file
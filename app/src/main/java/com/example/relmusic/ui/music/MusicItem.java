@@ -4,6 +4,8 @@ import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.example.relmusic.data.Library;
+
 public class MusicItem implements Parcelable {
     private long id;
     private String title;
@@ -11,6 +13,7 @@ public class MusicItem implements Parcelable {
     private String album;
     private long duration;
     private String path;
+    private long albumId = -1;
     private Uri albumArtUri;
 
     public MusicItem(long id, String title, String artist, String album,
@@ -24,6 +27,18 @@ public class MusicItem implements Parcelable {
         this.albumArtUri = albumArtUri;
     }
 
+    // The album art Uri is derived from albumId on first use instead of parsed up front.
+    public MusicItem(long id, String title, String artist, String album,
+                     long duration, String path, long albumId) {
+        this.id = id;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.duration = duration;
+        this.path = path;
+        this.albumId = albumId;
+    }
+
     protected MusicItem(Parcel in) {
         id = in.readLong();
         title = in.readString();
@@ -31,6 +46,7 @@ public class MusicItem implements Parcelable {
         album = in.readString();
         duration = in.readLong();
         path = in.readString();
+        albumId = in.readLong();
         albumArtUri = in.readParcelable(Uri.class.getClassLoader());
     }
 
@@ -42,7 +58,8 @@ public class MusicItem implements Parcelable {
         dest.writeString(album);
         dest.writeLong(duration);
         dest.writeString(path);
-        dest.writeParcelable(albumArtUri, flags);
+        dest.writeLong(albumId);
+        dest.writeParcelable(getAlbumArtUri(), flags);
     }
 
     @Override
@@ -68,7 +85,14 @@ public class MusicItem implements Parcelable {
     public String getAlbum() { return album; }
     public long getDuration() { return duration; }
     public String getPath() { return path; }
-    public Uri getAlbumArtUri() { return albumArtUri; }
+    public long getAlbumId() { return albumId; }
+
+    public Uri getAlbumArtUri() {
+        if (albumArtUri == null && albumId >= 0) {
+            albumArtUri = Library.albumArtUri(albumId);
+        }
+        return albumArtUri;
+    }
 
     public void setId(long id) { this.id = id; }
     public void setTitle(String title) { this.title = title; }
@@ -76,5 +100,6 @@ public class MusicItem implements Parcelable {
     public void setAlbum(String album) { this.album = album; }
     public void setDuration(long duration) { this.duration = duration; }
     public void setPath(String path) { this.path = path; }
+    public void setAlbumId(long albumId) { this.albumId = albumId; }
     public void setAlbumArtUri(Uri albumArtUri) { this.albumArtUri = albumArtUri; }
 }
\ No newline at end of file
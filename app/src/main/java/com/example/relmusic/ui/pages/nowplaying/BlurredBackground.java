@@ -0,0 +1,164 @@
+package com.example.relmusic.ui.pages.nowplaying;
+
+import android.graphics.Bitmap;
+import android.graphics.RenderEffect;
+import android.graphics.Shader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows a blurred album cover behind Now Playing. The cover is first shrunk to a small
+ * fraction of its size, which is cheap and already removes most detail. On API 31+ the
+ * view blurs it on the GPU with a RenderEffect; below that a stack blur runs on a worker
+ * thread. Results are kept per album id, so skipping between tracks of one album or
+ * reopening the screen reuses them. Main thread only, apart from the worker.
+ */
+final class BlurredBackground {
+
+    private static final int DOWNSAMPLE = 8;
+    private static final int STACK_BLUR_RADIUS = 4;
+    private static final float RENDER_EFFECT_RADIUS_DP = 24f;
+    private static final int MAX_CACHED = 16;
+
+    private static final LruCache<Long, Bitmap> cache = new LruCache<>(MAX_CACHED);
+    private static final ExecutorService blurExecutor = Executors.newSingleThreadExecutor();
+
+    private final ImageView view;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Bumped on every request so a blur that finishes late is dropped.
+    private int generation;
+
+    BlurredBackground(ImageView view) {
+        this.view = view;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            float radius = RENDER_EFFECT_RADIUS_DP * view.getResources().getDisplayMetrics().density;
+            view.setRenderEffect(RenderEffect.createBlurEffect(radius, radius, Shader.TileMode.CLAMP));
+        }
+    }
+
+    /**
+     * Shows the blurred {@code cover}. The cover is only read during this call.
+     *
+     * @param albumId cache key; negative ids aren't cached
+     */
+    void show(long albumId, Bitmap cover) {
+        int request = ++generation;
+
+        Bitmap cached = albumId >= 0 ? cache.get(albumId) : null;
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        Bitmap small = Bitmap.createScaledBitmap(cover,
+                Math.max(1, cover.getWidth() / DOWNSAMPLE),
+                Math.max(1, cover.getHeight() / DOWNSAMPLE), true);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            put(albumId, small);
+            view.setImageBitmap(small);
+            return;
+        }
+
+        blurExecutor.execute(() -> {
+            Bitmap blurred = stackBlur(small, STACK_BLUR_RADIUS);
+            mainHandler.post(() -> {
+                put(albumId, blurred);
+                if (request == generation) {
+                    view.setImageBitmap(blurred);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops any blur still in flight, e.g. when the cover is cleared or the screen closes.
+     */
+    void cancel() {
+        generation++;
+    }
+
+    private static void put(long albumId, Bitmap bitmap) {
+        if (albumId >= 0) {
+            cache.put(albumId, bitmap);
+        }
+    }
+
+    private static Bitmap stackBlur(Bitmap source, int radius) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] pixels = new int[width * height];
+        int[] rows = new int[width * height];
+        source.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        for (int y = 0; y < height; y++) {
+            blurLine(pixels, rows, y * width, 1, width, radius);
+        }
+        for (int x = 0; x < width; x++) {
+            blurLine(rows, pixels, x, width, height, radius);
+        }
+
+        Bitmap blurred = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        blurred.setPixels(pixels, 0, width, 0, 0, width, height);
+        return blurred;
+    }
+
+    /**
+     * Convolves one row or column with a triangular kernel of the given radius, keeping
+     * running sums so each pixel costs the same whatever the radius. Edges are clamped.
+     */
+    private static void blurLine(int[] src, int[] dst, int offset, int stride, int length,
+                                 int radius) {
+        int divisor = (radius + 1) * (radius + 1);
+        int sumR = 0, sumG = 0, sumB = 0;
+        // Pixels left of and including the centre, and pixels right of it.
+        int outR = 0, outG = 0, outB = 0;
+        int inR = 0, inG = 0, inB = 0;
+
+        for (int i = -radius; i <= radius; i++) {
+            int color = src[offset + clamp(i, length) * stride];
+            int weight = radius + 1 - Math.abs(i);
+            sumR += ((color >> 16) & 0xff) * weight;
+            sumG += ((color >> 8) & 0xff) * weight;
+            sumB += (color & 0xff) * weight;
+            if (i <= 0) {
+                outR += (color >> 16) & 0xff;
+                outG += (color >> 8) & 0xff;
+                outB += color & 0xff;
+            } else {
+                inR += (color >> 16) & 0xff;
+                inG += (color >> 8) & 0xff;
+                inB += color & 0xff;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            dst[offset + i * stride] = 0xff000000
+                    | (sumR / divisor) << 16 | (sumG / divisor) << 8 | sumB / divisor;
+
+            int leaving = src[offset + clamp(i - radius, length) * stride];
+            int centre = src[offset + clamp(i + 1, length) * stride];
+            int entering = src[offset + clamp(i + radius + 1, length) * stride];
+
+            sumR += inR - outR + ((entering >> 16) & 0xff);
+            sumG += inG - outG + ((entering >> 8) & 0xff);
+            sumB += inB - outB + (entering & 0xff);
+            outR += ((centre >> 16) & 0xff) - ((leaving >> 16) & 0xff);
+            outG += ((centre >> 8) & 0xff) - ((leaving >> 8) & 0xff);
+            outB += (centre & 0xff) - (leaving & 0xff);
+            inR += ((entering >> 16) & 0xff) - ((centre >> 16) & 0xff);
+            inG += ((entering >> 8) & 0xff) - ((centre >> 8) & 0xff);
+            inB += (entering & 0xff) - (centre & 0xff);
+        }
+    }
+
+    private static int clamp(int index, int length) {
+        return Math.max(0, Math.min(index, length - 1));
+    }
+}
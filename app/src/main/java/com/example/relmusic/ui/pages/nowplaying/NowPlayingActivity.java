@@ -1,25 +1,17 @@
 package com.example.relmusic.ui.pages.nowplaying;
 
 import android.annotation.SuppressLint;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
-import android.media.MediaPlayer;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
-import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
-import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -34,14 +26,21 @@ import androidx.core.content.ContextCompat;
 import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.palette.graphics.Palette;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.target.CustomTarget;
 import com.bumptech.glide.request.transition.Transition;
 import com.example.relmusic.R;
+import com.example.relmusic.ui.AlbumArt;
+import com.example.relmusic.ui.AlbumArtOptions;
 import com.example.relmusic.databinding.ActivityNowPlayingBinding;
 import com.example.relmusic.service.MusicService;
+import com.example.relmusic.service.PlaybackStateBus;
+import com.example.relmusic.ui.music.MusicAdapter;
 import com.example.relmusic.ui.music.MusicItem;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.button.MaterialButton;
@@ -59,6 +58,7 @@ public class NowPlayingActivity extends AppCompatActivity {
     private static final String LYRICS_PREFS = "LyricsPreferences";
 
     private ActivityNowPlayingBinding binding;
+    private BlurredBackground blurredBackground;
     private MusicService musicService;
     private boolean serviceBound = false;
     private MusicItem currentSong;
@@ -88,42 +88,6 @@ public class NowPlayingActivity extends AppCompatActivity {
         }
     };
 
-    private BroadcastReceiver musicUpdateReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if (action != null) {
-                switch (action) {
-                    case MusicService.ACTION_PLAYBACK_STATE_CHANGED:
-                        boolean playing = intent.getBooleanExtra("is_playing", false);
-                        isPlaying = playing;
-                        updatePlayPauseButton();
-                        if (playing) {
-                            startSeekBarUpdates();
-                        } else {
-                            stopSeekBarUpdates();
-                        }
-                        break;
-                    case MusicService.ACTION_MUSIC_UPDATED:
-                        MusicItem updatedSong = intent.getParcelableExtra("music_item");
-                        if (updatedSong != null) {
-                            currentSong = updatedSong;
-                            setupNowPlaying();
-                        }
-                        break;
-                    case MusicService.ACTION_SHUFFLE_STATE_CHANGED:
-                        isShuffleEnabled = intent.getBooleanExtra("is_shuffle_enabled", false);
-                        updateShuffleButton();
-                        break;
-                    case MusicService.ACTION_REPEAT_STATE_CHANGED:
-                        repeatMode = intent.getIntExtra("repeat_mode", MusicService.REPEAT_OFF);
-                        updateRepeatButton();
-                        break;
-                }
-            }
-        }
-    };
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         DynamicColors.applyToActivityIfAvailable(this);
@@ -131,6 +95,7 @@ public class NowPlayingActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         binding = ActivityNowPlayingBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
+        blurredBackground = new BlurredBackground(binding.blurredBackground);
 
         Intent intent = getIntent();
         if (intent.hasExtra("music_item")) {
@@ -144,7 +109,7 @@ public class NowPlayingActivity extends AppCompatActivity {
         setupClickListeners();
         setupProgressIndicator();
         bindToMusicService();
-        registerMusicUpdateReceiver();
+        observePlaybackState();
     }
 
     private void bindToMusicService() {
@@ -152,23 +117,38 @@ public class NowPlayingActivity extends AppCompatActivity {
         bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
     }
 
-    private void registerMusicUpdateReceiver() {
-        try {
-            IntentFilter filter = new IntentFilter();
-            filter.addAction(MusicService.ACTION_PLAYBACK_STATE_CHANGED);
-            filter.addAction(MusicService.ACTION_MUSIC_UPDATED);
-            filter.addAction(MusicService.ACTION_SHUFFLE_STATE_CHANGED);
-            filter.addAction(MusicService.ACTION_REPEAT_STATE_CHANGED);
+    private void observePlaybackState() {
+        PlaybackStateBus.getState().observe(this, state -> {
+            MusicItem song = state.getSong();
+            if (song == null) {
+                return;
+            }
 
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
-                registerReceiver(musicUpdateReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
-            } else {
-                registerReceiver(musicUpdateReceiver, filter);
+            if (currentSong == null || song.getId() != currentSong.getId()) {
+                currentSong = song;
+                setupNowPlaying();
             }
 
-        } catch (Exception e) {
-            Log.e("NowPlayingActivity", "Error registering broadcast receiver: " + e.getMessage(), e);
-        }
+            if (state.isPlaying() != isPlaying) {
+                isPlaying = state.isPlaying();
+                updatePlayPauseButton();
+                if (isPlaying) {
+                    startSeekBarUpdates();
+                } else {
+                    stopSeekBarUpdates();
+                }
+            }
+
+            if (state.isShuffleEnabled() != isShuffleEnabled) {
+                isShuffleEnabled = state.isShuffleEnabled();
+                updateShuffleButton();
+            }
+
+            if (state.getRepeatMode() != repeatMode) {
+                repeatMode = state.getRepeatMode();
+                updateRepeatButton();
+            }
+        });
     }
 
     private void updateUIFromService() {
@@ -192,19 +172,14 @@ public class NowPlayingActivity extends AppCompatActivity {
     }
 
     private void updateProgressFromService() {
-        if (musicService != null && musicService.getMediaPlayer() != null) {
-            try {
-                MediaPlayer mediaPlayer = musicService.getMediaPlayer();
-                int currentPosition = mediaPlayer.getCurrentPosition();
-                int duration = mediaPlayer.getDuration();
-
-                if (duration > 0) {
-                    int progress = (int) (((float) currentPosition / duration) * 100);
-                    binding.seekBar.setProgress(progress);
-                    binding.currentTime.setText(formatDuration(currentPosition));
-                }
-            } catch (IllegalStateException e) {
-                Log.e("NowPlayingActivity", "Error getting playback position: " + e.getMessage());
+        if (musicService != null) {
+            int currentPosition = musicService.getCurrentPosition();
+            int duration = musicService.getDuration();
+
+            if (duration > 0) {
+                int progress = (int) (((float) currentPosition / duration) * 100);
+                binding.seekBar.setProgress(progress);
+                binding.currentTime.setText(formatDuration(currentPosition));
             }
         }
     }
@@ -264,17 +239,22 @@ public class NowPlayingActivity extends AppCompatActivity {
     }
 
     private void loadAlbumArt() {
+        // The cover fills the screen width at most; it also feeds the blurred
+        // background, so keep full colour depth instead of the RGB_565 default.
+        int size = getResources().getDisplayMetrics().widthPixels;
         Glide.with(this)
                 .asBitmap()
-                .load(currentSong.getAlbumArtUri())
+                .load(AlbumArt.of(currentSong))
+                .format(DecodeFormat.PREFER_ARGB_8888)
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
                 .placeholder(R.drawable.ic_outline_music_note_24)
                 .error(R.drawable.ic_outline_music_note_24)
-                .into(new CustomTarget<Bitmap>() {
+                .into(new CustomTarget<Bitmap>(size, size) {
                     @Override
                     public void onResourceReady(Bitmap bitmap, Transition<? super Bitmap> transition) {
                         binding.albumArt.setImageBitmap(bitmap);
 
-                        applyBlurredBackground(bitmap);
+                        blurredBackground.show(currentSong.getAlbumId(), bitmap);
 
 //                        Palette.from(bitmap).generate(palette -> {
 //                            if (palette != null) {
@@ -286,56 +266,12 @@ public class NowPlayingActivity extends AppCompatActivity {
                     @Override
                     public void onLoadCleared(Drawable placeholder) {
                         binding.albumArt.setImageDrawable(placeholder);
+                        blurredBackground.cancel();
                         binding.blurredBackground.setImageResource(R.drawable.ic_outline_music_note_24);
                     }
                 });
     }
 
-    private void applyBlurredBackground(Bitmap originalBitmap) {
-        try {
-            Bitmap blurredBitmap = blurBitmap(originalBitmap, 25f);
-            binding.blurredBackground.setImageBitmap(blurredBitmap);
-
-        } catch (Exception e) {
-            Log.e("NowPlayingActivity", "Error applying blur effect: " + e.getMessage(), e);
-            binding.blurredBackground.setImageBitmap(originalBitmap);
-            binding.blurredBackground.setAlpha(0.3f);
-        }
-    }
-
-    private Bitmap blurBitmap(Bitmap bitmap, float radius) {
-        Bitmap outputBitmap = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
-
-        RenderScript rs = RenderScript.create(this);
-
-        try {
-            ScriptIntrinsicBlur blurScript = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
-
-            Allocation inputAllocation = Allocation.createFromBitmap(rs, bitmap);
-            Allocation outputAllocation = Allocation.createFromBitmap(rs, outputBitmap);
-
-            blurScript.setRadius(Math.min(25f, Math.max(1f, radius)));
-
-            blurScript.setInput(inputAllocation);
-
-            blurScript.forEach(outputAllocation);
-
-            outputAllocation.copyTo(outputBitmap);
-
-            inputAllocation.destroy();
-            outputAllocation.destroy();
-            blurScript.destroy();
-
-        } catch (Exception e) {
-            Log.e("NowPlayingActivity", "RenderScript blur failed: " + e.getMessage(), e);
-            return bitmap;
-        } finally {
-            rs.destroy();
-        }
-
-        return outputBitmap;
-    }
-
     private void applyDynamicColors(Palette palette) {
         int primaryColor = MaterialColors.getColor(this, com.google.android.material.R.attr.colorPrimaryContainer, 0);
         int surfaceColor = MaterialColors.getColor(this, com.google.android.material.R.attr.colorSurface, 0);
@@ -455,8 +391,9 @@ public class NowPlayingActivity extends AppCompatActivity {
             queueRecyclerView.setVisibility(View.VISIBLE);
             emptyQueueText.setVisibility(View.GONE);
 
-            QueueAdapter queueAdapter = new QueueAdapter(queueList);
+            QueueAdapter queueAdapter = new QueueAdapter();
             queueRecyclerView.setAdapter(queueAdapter);
+            queueAdapter.submitList(queueList);
         }
 
         bottomSheetDialog.setContentView(view);
@@ -489,25 +426,21 @@ public class NowPlayingActivity extends AppCompatActivity {
     }
 
     private void handleProgressTouch(float adjustedX, int usableWidth) {
-        if (musicService != null && musicService.getMediaPlayer() != null) {
-            MediaPlayer mediaPlayer = musicService.getMediaPlayer();
-
+        if (musicService != null) {
             float progressPercent = Math.max(0, Math.min(1, adjustedX / usableWidth));
 
             int newProgress = (int) (progressPercent * 100);
             binding.seekBar.setProgress(newProgress);
 
-            int seekPosition = (int) (progressPercent * mediaPlayer.getDuration());
+            int seekPosition = (int) (progressPercent * musicService.getDuration());
             binding.currentTime.setText(formatDuration(seekPosition));
         }
     }
 
     private void seekToPosition(float adjustedX, int usableWidth) {
-        if (musicService != null && musicService.getMediaPlayer() != null) {
-            MediaPlayer mediaPlayer = musicService.getMediaPlayer();
-
+        if (musicService != null) {
             float progressPercent = Math.max(0, Math.min(1, adjustedX / usableWidth));
-            int seekPosition = (int) (progressPercent * mediaPlayer.getDuration());
+            int seekPosition = (int) (progressPercent * musicService.getDuration());
 
             Intent serviceIntent = new Intent(this, MusicService.class);
             serviceIntent.setAction(MusicService.ACTION_SEEK);
@@ -611,19 +544,14 @@ public class NowPlayingActivity extends AppCompatActivity {
         updateSeekBar = new Runnable() {
             @Override
             public void run() {
-                if (musicService != null && musicService.getMediaPlayer() != null && isPlaying && !isDraggingSeekBar) {
-                    MediaPlayer mediaPlayer = musicService.getMediaPlayer();
-                    try {
-                        int currentPosition = mediaPlayer.getCurrentPosition();
-                        int duration = mediaPlayer.getDuration();
-
-                        if (duration > 0) {
-                            int progress = (int) (((float) currentPosition / duration) * 100);
-                            binding.seekBar.setProgress(progress);
-                            binding.currentTime.setText(formatDuration(currentPosition));
-                        }
-                    } catch (IllegalStateException e) {
-                        // Handle media player state exceptions
+                if (musicService != null && isPlaying && !isDraggingSeekBar) {
+                    int currentPosition = musicService.getCurrentPosition();
+                    int duration = musicService.getDuration();
+
+                    if (duration > 0) {
+                        int progress = (int) (((float) currentPosition / duration) * 100);
+                        binding.seekBar.setProgress(progress);
+                        binding.currentTime.setText(formatDuration(currentPosition));
                     }
                 }
 
@@ -657,24 +585,22 @@ public class NowPlayingActivity extends AppCompatActivity {
         super.onDestroy();
 
         stopSeekBarUpdates();
+        if (blurredBackground != null) {
+            blurredBackground.cancel();
+        }
 
         if (serviceBound) {
             unbindService(serviceConnection);
             serviceBound = false;
         }
-
-        if (musicUpdateReceiver != null) {
-            unregisterReceiver(musicUpdateReceiver);
-        }
     }
 
     // Queue Adapter for RecyclerView
-    private static class QueueAdapter extends RecyclerView.Adapter<QueueAdapter.QueueViewHolder> {
-
-        private List<MusicItem> queueList;
+    private static class QueueAdapter extends ListAdapter<MusicItem, QueueAdapter.QueueViewHolder> {
 
-        public QueueAdapter(List<MusicItem> queueList) {
-            this.queueList = queueList;
+        public QueueAdapter() {
+            super(MusicAdapter.DIFF_CALLBACK);
+            setHasStableIds(true);
         }
 
         @Override
@@ -686,13 +612,13 @@ public class NowPlayingActivity extends AppCompatActivity {
 
         @Override
         public void onBindViewHolder(QueueViewHolder holder, int position) {
-            MusicItem item = queueList.get(position);
+            MusicItem item = getItem(position);
             holder.bind(item, position);
         }
 
         @Override
-        public int getItemCount() {
-            return queueList.size();
+        public long getItemId(int position) {
+            return getItem(position).getId();
         }
 
         static class QueueViewHolder extends RecyclerView.ViewHolder {
@@ -729,9 +655,8 @@ public class NowPlayingActivity extends AppCompatActivity {
 
                 // Load album art with Glide
                 Glide.with(itemView.getContext())
-                        .load(item.getAlbumArtUri())
-                        .placeholder(R.drawable.ic_outline_music_note_24)
-                        .error(R.drawable.ic_outline_music_note_24)
+                        .load(AlbumArt.of(item))
+                        .apply(AlbumArtOptions.songThumbnail(itemView.getContext()))
                         .into(queueAlbumArt);
             }
         }
@@ -4,18 +4,14 @@ import android.Manifest;
 import android.animation.ObjectAnimator;
 import android.annotation.SuppressLint;
 import android.content.BroadcastReceiver;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Parcelable;
-import android.provider.MediaStore;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -41,16 +37,20 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 
 import com.example.relmusic.R;
+import com.example.relmusic.data.LibraryRepository;
+import com.example.relmusic.data.QueueSource;
+import com.example.relmusic.data.SearchSession;
 import com.example.relmusic.databinding.SearchFragmentBinding;
 import com.example.relmusic.service.MusicService;
+import com.example.relmusic.service.PlaybackStateBus;
+import com.example.relmusic.ui.AlbumArt;
+import com.example.relmusic.ui.AlbumArtOptions;
 import com.example.relmusic.ui.music.MusicAdapter;
 import com.example.relmusic.ui.music.MusicItem;
 import com.example.relmusic.ui.pages.nowplaying.NowPlayingActivity;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class SearchFragment extends Fragment {
 
@@ -58,14 +58,13 @@ public class SearchFragment extends Fragment {
 
     private SearchFragmentBinding binding;
     private MusicAdapter searchAdapter;
-    private List<MusicItem> allMusicList = new ArrayList<>();
     private List<MusicItem> searchResults = new ArrayList<>();
-    private ExecutorService executorService;
+    private SearchSession searchSession;
+    private LibraryRepository libraryRepository;
     private Handler searchHandler;
     private Runnable searchRunnable;
     private static final int PERMISSION_REQUEST_CODE = 124;
-    private static final int SEARCH_DELAY = 300;
-    private boolean isSearching = false;
+    private static final int SEARCH_DELAY = 150;
 
     private MaterialCardView miniPlayerContainer;
     private ImageView miniAlbumArt;
@@ -93,21 +92,6 @@ public class SearchFragment extends Fragment {
                 String action = intent.getAction();
                 if (action != null) {
                     switch (action) {
-                        case MusicService.ACTION_MUSIC_UPDATED:
-                            MusicItem musicItem = intent.getParcelableExtra("music_item");
-                            boolean playing = intent.getBooleanExtra("is_playing", false);
-                            if (musicItem != null) {
-                                showMiniPlayer(musicItem);
-                                updateMiniPlayerState(playing);
-                            }
-                            break;
-                        case MusicService.ACTION_PLAYBACK_STATE_CHANGED:
-                            boolean playingState = intent.getBooleanExtra("is_playing", false);
-                            updateMiniPlayerState(playingState);
-                            break;
-                        case MusicService.ACTION_HIDE_MINI_PLAYER:
-                            hideMiniPlayer();
-                            break;
                         case "MINI_PLAYER_VISIBILITY_CHANGED":
                             boolean isVisible = intent.getBooleanExtra("is_visible", false);
                             int height = intent.getIntExtra("height", 0);
@@ -126,17 +110,26 @@ public class SearchFragment extends Fragment {
         binding = SearchFragmentBinding.inflate(inflater, container, false);
         View root = binding.getRoot();
 
-        executorService = Executors.newSingleThreadExecutor();
+        searchSession = new SearchSession();
         searchHandler = new Handler(Looper.getMainLooper());
 
+        libraryRepository = LibraryRepository.getInstance(requireContext());
+
         initializeMiniPlayer();
         setupRecyclerView();
         setupSearchView();
-        loadAllMusic();
 
         return root;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        observeLibrary();
+        observePlaybackState();
+        loadAllMusic();
+    }
+
     private void initializeMiniPlayer() {
         try {
             miniPlayerContainer = binding.miniPlayerContainer;
@@ -196,9 +189,10 @@ public class SearchFragment extends Fragment {
     }
 
     private void setupRecyclerView() {
-        searchAdapter = new MusicAdapter(searchResults, getContext());
+        searchAdapter = new MusicAdapter(getContext());
         binding.searchRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         binding.searchRecyclerView.setAdapter(searchAdapter);
+        searchAdapter.attachPreloader(binding.searchRecyclerView);
 
         searchAdapter.setOnMusicItemClickListener(new MusicAdapter.OnMusicItemClickListener() {
             @Override
@@ -271,43 +265,26 @@ public class SearchFragment extends Fragment {
     }
     private void performSearch(String query) {
         if (query.isEmpty()) {
+            searchSession.cancel();
             showInitialState();
             return;
         }
 
-        if (isSearching) return;
-
-        isSearching = true;
         showLoading(true);
 
-        executorService.execute(() -> {
-            List<MusicItem> results = new ArrayList<>();
-            String lowerQuery = query.toLowerCase();
+        searchSession.search(query, (searchedQuery, results) -> {
+            if (binding == null) return;
 
-            for (MusicItem item : allMusicList) {
-                if (item.getTitle().toLowerCase().contains(lowerQuery) ||
-                        item.getArtist().toLowerCase().contains(lowerQuery) ||
-                        item.getAlbum().toLowerCase().contains(lowerQuery)) {
-                    results.add(item);
-                }
-            }
-
-            if (getActivity() != null) {
-                getActivity().runOnUiThread(() -> {
-                    showLoading(false);
-                    isSearching = false;
-                    updateSearchResults(results, query);
-                });
-            }
+            showLoading(false);
+            updateSearchResults(results, searchedQuery);
         });
     }
 
     private void updateSearchResults(List<MusicItem> results, String query) {
         if (binding == null) return;
 
-        searchResults.clear();
-        searchResults.addAll(results);
-        searchAdapter.notifyDataSetChanged();
+        searchResults = results;
+        searchAdapter.submitList(results);
 
         updateUI(query);
     }
@@ -390,66 +367,42 @@ public class SearchFragment extends Fragment {
     }
 
     private void loadMusicFromDevice() {
-        executorService.execute(() -> {
-            List<MusicItem> tempMusicList = new ArrayList<>();
-
-            ContentResolver contentResolver = requireContext().getContentResolver();
-            Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-
-            String[] projection = {
-                    MediaStore.Audio.Media._ID,
-                    MediaStore.Audio.Media.TITLE,
-                    MediaStore.Audio.Media.ARTIST,
-                    MediaStore.Audio.Media.ALBUM,
-                    MediaStore.Audio.Media.DURATION,
-                    MediaStore.Audio.Media.DATA,
-                    MediaStore.Audio.Media.ALBUM_ID
-            };
-
-            String selection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
-            String sortOrder = MediaStore.Audio.Media.TITLE + " ASC";
-
-            try (Cursor cursor = contentResolver.query(musicUri, projection, selection, null, sortOrder)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-                    int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
-                    int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                    int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
-                    int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
-                    int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
-                    int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-
-                    do {
-                        long id = cursor.getLong(idColumn);
-                        String title = cursor.getString(titleColumn);
-                        String artist = cursor.getString(artistColumn);
-                        String album = cursor.getString(albumColumn);
-                        long duration = cursor.getLong(durationColumn);
-                        String path = cursor.getString(pathColumn);
-                        long albumId = cursor.getLong(albumIdColumn);
-
-                        Uri albumArtUri = Uri.parse("content://media/external/audio/albumart/" + albumId);
-
-                        MusicItem musicItem = new MusicItem(id, title, artist, album, duration, path, albumArtUri);
-                        tempMusicList.add(musicItem);
-
-                    } while (cursor.moveToNext());
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                if (getActivity() != null) {
-                    getActivity().runOnUiThread(() -> {
-                        Toast.makeText(getContext(), "Error loading music files", Toast.LENGTH_SHORT).show();
-                    });
+        libraryRepository.loadIfNeeded();
+    }
+
+    private void observeLibrary() {
+        libraryRepository.getLibrary().observe(getViewLifecycleOwner(), library -> {
+            searchSession.setLibrary(library);
+
+            if (binding != null && binding.searchEditText.getText() != null) {
+                String query = binding.searchEditText.getText().toString().trim();
+                if (!query.isEmpty()) {
+                    performSearch(query);
                 }
+            }
+        });
+    }
+
+    private void observePlaybackState() {
+        PlaybackStateBus.getState().observe(getViewLifecycleOwner(), state -> {
+            if (isFragmentDestroyed) {
                 return;
             }
 
-            if (getActivity() != null) {
-                getActivity().runOnUiThread(() -> {
-                    allMusicList.clear();
-                    allMusicList.addAll(tempMusicList);
-                });
+            try {
+                MusicItem song = state.getSong();
+                if (song == null) {
+                    hideMiniPlayer();
+                    return;
+                }
+
+                if (!isMiniPlayerVisible || currentPlayingItem == null
+                        || currentPlayingItem.getId() != song.getId()) {
+                    showMiniPlayer(song);
+                }
+                updateMiniPlayerState(state.isPlaying());
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling playback state: " + e.getMessage(), e);
             }
         });
     }
@@ -457,9 +410,7 @@ public class SearchFragment extends Fragment {
     private void startMusicServiceAndOpenNowPlaying(MusicItem musicItem) {
         startMusicServiceWithPlaylist(musicItem);
 
-        new Handler().postDelayed(() -> {
-            openNowPlaying(musicItem);
-        }, 200);
+        openNowPlaying(musicItem);
     }
 
     private void startMusicService(MusicItem musicItem) {
@@ -471,27 +422,9 @@ public class SearchFragment extends Fragment {
             return;
         }
 
-        int selectedIndex = -1;
-        for (int i = 0; i < searchResults.size(); i++) {
-            if (searchResults.get(i).getId() == selectedSong.getId()) {
-                selectedIndex = i;
-                break;
-            }
-        }
-
-        if (selectedIndex == -1) {
-            selectedIndex = 0;
-        }
-
-        Intent playlistIntent = new Intent(getContext(), MusicService.class);
-        playlistIntent.setAction(MusicService.ACTION_SET_PLAYLIST);
-        playlistIntent.putParcelableArrayListExtra("playlist", new ArrayList<>(searchResults));
-        playlistIntent.putExtra("start_index", selectedIndex);
-        getContext().startService(playlistIntent);
-
         Intent playIntent = new Intent(getContext(), MusicService.class);
-        playIntent.setAction(MusicService.ACTION_PLAY);
-        playIntent.putExtra("music_item", selectedSong);
+        playIntent.setAction(MusicService.ACTION_PLAY_QUEUE);
+        QueueSource.ofSongs(searchResults, selectedSong.getId()).writeTo(playIntent);
         getContext().startService(playIntent);
     }
 
@@ -546,9 +479,8 @@ public class SearchFragment extends Fragment {
 
             try {
                 Glide.with(this)
-                        .load(musicItem.getAlbumArtUri())
-                        .placeholder(R.drawable.ic_outline_music_note_24)
-                        .error(R.drawable.ic_outline_music_note_24)
+                        .load(AlbumArt.of(musicItem))
+                        .apply(AlbumArtOptions.songThumbnail(requireContext()))
                         .into(miniAlbumArt);
 
             } catch (Exception e) {
@@ -630,12 +562,6 @@ public class SearchFragment extends Fragment {
                     recyclerView.getPaddingRight(),
                     isVisible ? height : 0
             );
-
-            recyclerView.post(() -> {
-                if (recyclerView.getAdapter() != null) {
-                    recyclerView.getAdapter().notifyDataSetChanged();
-                }
-            });
         }
     }
 
@@ -644,9 +570,6 @@ public class SearchFragment extends Fragment {
         try {
             if (!isReceiverRegistered && miniPlayerReceiver != null && getActivity() != null) {
                 IntentFilter filter = new IntentFilter();
-                filter.addAction(MusicService.ACTION_MUSIC_UPDATED);
-                filter.addAction(MusicService.ACTION_PLAYBACK_STATE_CHANGED);
-                filter.addAction(MusicService.ACTION_HIDE_MINI_PLAYER);
                 filter.addAction("MINI_PLAYER_VISIBILITY_CHANGED");
 
                 if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
@@ -668,13 +591,6 @@ public class SearchFragment extends Fragment {
         super.onResume();
 
         registerMusicUpdateReceiver();
-
-        if (getActivity() != null) {
-            Intent requestStateIntent = new Intent(getActivity(), MusicService.class);
-            requestStateIntent.setAction(MusicService.ACTION_REQUEST_STATE);
-            getActivity().startService(requestStateIntent);
-
-        }
     }
 
     @Override
@@ -715,8 +631,8 @@ public class SearchFragment extends Fragment {
             }
         }
 
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+        if (searchSession != null) {
+            searchSession.release();
         }
         if (searchHandler != null && searchRunnable != null) {
             searchHandler.removeCallbacks(searchRunnable);
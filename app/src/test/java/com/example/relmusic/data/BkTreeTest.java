@@ -0,0 +1,93 @@
+package com.example.relmusic.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class BkTreeTest {
+
+    @Test
+    public void search_matchesBruteForce() {
+        Random random = new Random(11);
+        Set<String> unique = new TreeSet<>();
+        while (unique.size() < 2000) {
+            unique.add(randomWord(random));
+        }
+        String[] terms = unique.toArray(new String[0]);
+        BkTree tree = new BkTree(terms);
+        int[] outTerms = new int[terms.length];
+        int[] outDistances = new int[terms.length];
+
+        for (int i = 0; i < 200; i++) {
+            String word = randomWord(random);
+            for (int maxDistance = 1; maxDistance <= 2; maxDistance++) {
+                Set<Integer> expected = new HashSet<>();
+                for (int termId = 0; termId < terms.length; termId++) {
+                    if (levenshtein(word, terms[termId]) <= maxDistance) {
+                        expected.add(termId);
+                    }
+                }
+
+                int found = tree.search(word, maxDistance, outTerms, outDistances);
+                Set<Integer> actual = new HashSet<>();
+                for (int j = 0; j < found; j++) {
+                    actual.add(outTerms[j]);
+                    assertEquals(levenshtein(word, terms[outTerms[j]]), outDistances[j]);
+                }
+                assertEquals(word, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void search_emptyDictionary() {
+        BkTree tree = new BkTree(new String[0]);
+
+        assertEquals(0, tree.search("word", 2, new int[4], new int[4]));
+    }
+
+    @Test
+    public void search_stopsAtOutputCapacity() {
+        String[] terms = {"cat", "bat", "hat", "mat", "rat"};
+        BkTree tree = new BkTree(terms);
+        int[] outTerms = new int[2];
+
+        assertEquals(2, tree.search("pat", 1, outTerms, new int[2]));
+        assertTrue(Arrays.asList(terms).contains(terms[outTerms[0]]));
+    }
+
+    private static String randomWord(Random random) {
+        // A small alphabet makes near misses common.
+        char[] chars = new char[3 + random.nextInt(5)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(5));
+        }
+        return new String(chars);
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.relmusic.data;
+
+import com.example.relmusic.ui.album.AlbumItem;
+import com.example.relmusic.ui.artist.ArtistItem;
+import com.example.relmusic.ui.music.MusicItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class LibraryIndexTest {
+
+    @Test
+    public void build_ordersSongsByTitle() {
+        LibraryIndex index = new LibraryIndex();
+        addSong(index, 1, "charlie", "Artist", "Album", 10);
+        addSong(index, 2, "Alpha", "Artist", "Album", 10);
+        addSong(index, 3, "bravo", "Artist", "Album", 10);
+
+        assertEquals(titles("Alpha", "bravo", "charlie"), titlesOf(index.build()));
+    }
+
+    @Test
+    public void addSong_identicalRowIsNoChange() {
+        LibraryIndex index = new LibraryIndex();
+        assertTrue(addSong(index, 1, "Song", "Artist", "Album", 10));
+        Library first = index.build();
+
+        assertFalse(addSong(index, 1, "Song", "Artist", "Album", 10));
+        assertSame(first.getSongTable(), index.build().getSongTable());
+
+        assertTrue(addSong(index, 1, "Song (Remastered)", "Artist", "Album", 10));
+        assertEquals(titles("Song (Remastered)"), titlesOf(index.build()));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void hasSameContents_comparesAlbum() {
+        LibraryIndex index = new LibraryIndex();
+        addSong(index, 1, "Song", "Artist", "Album", 10);
+        PagedSongList before = (PagedSongList) index.build().getSongs();
+
+        addSong(index, 1, "Song", "Artist", "Renamed Album", 10);
+        PagedSongList after = (PagedSongList) index.build().getSongs();
+
+        assertTrue(after.hasSameContents(0, after, 0));
+        assertFalse(before.hasSameContents(0, after, 0));
+    }
+
+    @Test
+    public void removeSong_updatesAggregates() {
+        LibraryIndex index = new LibraryIndex();
+        addSong(index, 1, "One", "Artist", "Album", 10);
+        addSong(index, 2, "Two", "Artist", "Album", 10);
+        addSong(index, 3, "Three", "Other", "Single", 20);
+
+        Library before = index.build();
+        AlbumItem album = findAlbum(before, "Album");
+        assertEquals(2, album.getSongCount());
+        assertEquals("/music/1", album.getSongPath());
+
+        assertTrue(index.removeSong(1));
+        assertFalse(index.removeSong(1));
+        index.removeSong(3);
+        Library after = index.build();
+
+        assertEquals(titles("Two"), titlesOf(after));
+        assertEquals(1, after.getAlbums().size());
+        AlbumItem remaining = findAlbum(after, "Album");
+        assertEquals(1, remaining.getSongCount());
+        // The album took its cover from the removed song and moves on to the other one.
+        assertEquals("/music/2", remaining.getSongPath());
+        assertEquals(album.getKey(), remaining.getKey());
+
+        assertEquals(1, after.getArtists().size());
+        ArtistItem artist = after.getArtists().get(0);
+        assertEquals("Artist", artist.getArtistName());
+        assertEquals(1, artist.getSongCount());
+    }
+
+    @Test
+    public void build_leavesEarlierLibrariesUntouched() {
+        LibraryIndex index = new LibraryIndex();
+        for (int id = 0; id < 50; id++) {
+            addSong(index, id, "Song " + id, "Artist", "Album", id);
+        }
+        Library first = index.build();
+        List<String> firstTitles = titlesOf(first);
+
+        for (int id = 0; id < 50; id += 2) {
+            index.removeSong(id);
+        }
+        addSong(index, 7, "Renamed", "Artist", "Album", 7);
+        addSong(index, 100, "New", "Artist", "Album", 100);
+        index.build();
+
+        assertEquals(firstTitles, titlesOf(first));
+    }
+
+    @Test
+    public void build_compactsAfterManyRemovals() {
+        LibraryIndex index = new LibraryIndex();
+        for (int id = 0; id < 2000; id++) {
+            addSong(index, id, String.format("Song %04d", id), "Artist " + id % 7, "Album", 1);
+        }
+        Library first = index.build();
+        for (int id = 0; id < 2000; id++) {
+            if (id % 4 != 0) {
+                index.removeSong(id);
+            }
+        }
+        addSong(index, 5000, "Song 0001a", "Artist", "Album", 1);
+
+        Library compacted = index.build();
+
+        assertEquals(501, compacted.getSongCount());
+        List<String> titles = titlesOf(compacted);
+        assertEquals("Song 0000", titles.get(0));
+        assertEquals("Song 0001a", titles.get(1));
+        assertEquals("Song 1996", titles.get(500));
+        assertEquals(501, findAlbum(compacted, "Album").getSongCount());
+        assertEquals(2000, first.getSongCount());
+    }
+
+    @Test
+    public void build_mergesRandomChangesInTitleOrder() {
+        Random random = new Random(7);
+        LibraryIndex index = new LibraryIndex();
+        TreeMap<Long, String> expected = new TreeMap<>();
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 300; i++) {
+                long id = random.nextInt(1000);
+                if (random.nextInt(4) == 0) {
+                    index.removeSong(id);
+                    expected.remove(id);
+                } else {
+                    String title = "t" + random.nextInt(5000);
+                    addSong(index, id, title, "Artist", "Album", 1);
+                    expected.put(id, title);
+                }
+            }
+
+            Library library = index.build();
+            List<String> expectedTitles = new ArrayList<>(expected.values());
+            expectedTitles.sort(String.CASE_INSENSITIVE_ORDER);
+            assertEquals(expectedTitles, titlesOf(library));
+            for (MusicItem song : library.getSongs()) {
+                assertEquals(expected.get(song.getId()), song.getTitle());
+            }
+        }
+    }
+
+    @Test
+    public void fromColumns_countsAggregates() {
+        LibraryIndex index = LibraryIndex.fromColumns(
+                new long[]{1, 2}, new long[]{10, 20}, new long[]{5, 5},
+                new String[]{"A", "B"}, new String[]{"/a", "/b"},
+                new int[]{0, 0}, new int[]{1, 1}, new String[]{"Artist", "Album"});
+
+        addSong(index, 3, "0 First", "Artist", "Album", 5);
+        Library library = index.build();
+
+        assertEquals(titles("0 First", "A", "B"), titlesOf(library));
+        assertEquals(3, findAlbum(library, "Album").getSongCount());
+        assertEquals(1030, library.getArtists().get(0).getTotalDuration());
+    }
+
+    private static boolean addSong(LibraryIndex index, long id, String title, String artist,
+                                   String album, long albumId) {
+        return index.addSong(id, title, artist, album, 1000, "/music/" + id, albumId);
+    }
+
+    private static AlbumItem findAlbum(Library library, String name) {
+        for (AlbumItem album : library.getAlbums()) {
+            if (album.getAlbumName().equals(name)) {
+                return album;
+            }
+        }
+        throw new AssertionError("No album " + name);
+    }
+
+    private static List<String> titlesOf(Library library) {
+        List<String> titles = new ArrayList<>();
+        for (MusicItem song : library.getSongs()) {
+            titles.add(song.getTitle());
+        }
+        return titles;
+    }
+
+    private static List<String> titles(String... titles) {
+        List<String> list = new ArrayList<>();
+        for (String title : titles) {
+            list.add(title);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.relmusic.data;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongIntMapTest {
+
+    @Test
+    public void remove_keepsCollidingKeysReachable() {
+        LongIntMap map = new LongIntMap(4);
+        // Multiples of a large power of two share low bits and pile into one probe chain.
+        long stride = 1L << 32;
+        for (int i = 0; i < 6; i++) {
+            map.put(i * stride, i);
+        }
+
+        assertEquals(2, map.remove(2 * stride));
+        assertEquals(LongIntMap.NO_VALUE, map.get(2 * stride));
+        for (int i = 0; i < 6; i++) {
+            if (i != 2) {
+                assertEquals(i, map.get(i * stride));
+            }
+        }
+        assertEquals(5, map.size());
+    }
+
+    @Test
+    public void remove_missingKey() {
+        LongIntMap map = new LongIntMap();
+        map.put(1, 10);
+
+        assertEquals(LongIntMap.NO_VALUE, map.remove(2));
+        assertEquals(10, map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void randomOperations_matchHashMap() {
+        Random random = new Random(42);
+        LongIntMap map = new LongIntMap(8);
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range keeps the table dense, so chains wrap around its end.
+            long key = random.nextInt(512) * 1024L;
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed != null ? removed : LongIntMap.NO_VALUE, map.remove(key));
+            } else {
+                int value = random.nextInt(1000);
+                expected.put(key, value);
+                map.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < 512; key++) {
+            Integer value = expected.get(key * 1024L);
+            assertEquals(value != null ? value : LongIntMap.NO_VALUE, map.get(key * 1024L));
+        }
+    }
+}
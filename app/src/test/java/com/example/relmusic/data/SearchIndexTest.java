@@ -0,0 +1,99 @@
+package com.example.relmusic.data;
+
+import com.example.relmusic.ui.music.MusicItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private static final String[] WORDS = {
+            "love", "night", "light", "river", "dream", "heart", "fire", "rain", "summer",
+            "shadow", "golden", "silver", "dancing", "midnight", "highway", "stranger"
+    };
+
+    @Test
+    public void search_findsTitleArtistAndAlbumWords() {
+        SearchIndex index = SearchIndex.build(SongTable.fromItems(Arrays.asList(
+                song(0, "Golden Hour", "The Rivers", "Summer"),
+                song(1, "Night Drive", "Silver", "Highway"),
+                song(2, "Rain", "Golden Boys", "Storms"))));
+
+        assertArrayEquals(new int[]{0, 2}, sorted(index.search("golden", () -> false)));
+        assertArrayEquals(new int[]{1}, index.search("night highway", () -> false));
+        assertArrayEquals(new int[]{0}, index.search("rivers", () -> false));
+        assertEquals(0, index.search("nothing", () -> false).length);
+        assertNull(index.search("golden", () -> true));
+    }
+
+    @Test
+    public void search_toleratesTypos() {
+        SearchIndex index = SearchIndex.build(SongTable.fromItems(Arrays.asList(
+                song(0, "Midnight Stranger", "Artist", "Album"),
+                song(1, "Rain", "Artist", "Album"))));
+
+        assertArrayEquals(new int[]{0}, index.search("midnigth", () -> false));
+        assertArrayEquals(new int[]{0}, index.search("strnger", () -> false));
+    }
+
+    @Test
+    public void canRefine_onlyForNarrowingQueries() {
+        assertTrue(SearchIndex.canRefine("gol", "gold"));
+        assertTrue(SearchIndex.canRefine("golden", "golden hour"));
+        assertFalse(SearchIndex.canRefine("gold", "gol"));
+        assertFalse(SearchIndex.canRefine("golden hour", "golden night"));
+        // "go" only matches word starts; "gol" also matches inside words.
+        assertFalse(SearchIndex.canRefine("go", "gol"));
+    }
+
+    @Test
+    public void refine_matchesFullSearch() {
+        Random random = new Random(3);
+        List<MusicItem> songs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            songs.add(song(i, word(random) + " " + word(random),
+                    word(random), word(random) + " " + word(random)));
+        }
+        SearchIndex index = SearchIndex.build(SongTable.fromItems(songs));
+
+        String[][] typing = {
+                {"li", "lig", "ligh", "light", "light r", "light ri", "light river"},
+                {"dan", "danc", "dancing", "dancing s", "dancing su"},
+                {"gol", "gold", "golde", "golden"},
+        };
+        int refinedCount = 0;
+        for (String[] queries : typing) {
+            int[] hits = index.search(queries[0], () -> false);
+            for (int i = 1; i < queries.length; i++) {
+                int[] searched = index.search(queries[i], () -> false);
+                if (SearchIndex.canRefine(queries[i - 1], queries[i])) {
+                    assertArrayEquals(queries[i], searched,
+                            index.refine(queries[i], hits, () -> false));
+                    refinedCount++;
+                }
+                hits = searched;
+            }
+        }
+        assertTrue(refinedCount >= 10);
+    }
+
+    private static MusicItem song(long id, String title, String artist, String album) {
+        return new MusicItem(id, title, artist, album, 1000, "/music/" + id, 1);
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static int[] sorted(int[] values) {
+        int[] copy = values.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
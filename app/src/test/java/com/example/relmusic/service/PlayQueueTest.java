@@ -0,0 +1,88 @@
+package com.example.relmusic.service;
+
+import com.example.relmusic.data.Library;
+import com.example.relmusic.ui.music.MusicItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PlayQueueTest {
+
+    @Test
+    public void shuffle_keepsCurrentSongFirst() {
+        PlayQueue queue = new PlayQueue(library(50), ids(50));
+
+        queue.shuffle(7, 42);
+
+        assertEquals(7, queue.get(0).getId());
+        Set<Long> seen = new HashSet<>();
+        for (int position = 0; position < queue.size(); position++) {
+            long id = queue.get(position).getId();
+            seen.add(id);
+            assertEquals(position, queue.indexOf(id));
+        }
+        assertEquals(50, seen.size());
+    }
+
+    @Test
+    public void restore_derivesSameOrderFromSeed() {
+        Library library = library(50);
+        PlayQueue queue = new PlayQueue(library, ids(50));
+        queue.shuffle(3, 1234);
+
+        PlayQueue restored = PlayQueue.restore(library, ids(50), queue.getShuffle());
+
+        assertArrayEquals(queue.copyPlayingIds(), restored.copyPlayingIds());
+    }
+
+    @Test
+    public void restore_dropsDeletedSongsAndShuffle() {
+        PlayQueue queue = new PlayQueue(library(50), ids(50));
+        queue.shuffle(3, 1234);
+
+        PlayQueue restored = PlayQueue.restore(library(40), ids(50), queue.getShuffle());
+
+        assertEquals(40, restored.size());
+        assertNull(restored.getShuffle());
+    }
+
+    @Test
+    public void append_followsShuffledOrderAndLeavesSnapshotsAlone() {
+        PlayQueue queue = new PlayQueue(library(10), ids(10));
+        queue.shuffle(0, 5);
+        List<MusicItem> snapshot = queue.snapshot();
+        List<MusicItem> before = new ArrayList<>(snapshot);
+
+        MusicItem outside = new MusicItem(999, "Outside", "Artist", "Album", 1000, "/x", 1);
+        assertEquals(10, queue.append(outside));
+        assertSame(outside, queue.get(10));
+        assertEquals(10, queue.indexOf(999));
+
+        queue.unshuffle();
+        assertEquals(10, queue.indexOf(999));
+        assertEquals(4, queue.indexOf(4));
+        assertEquals(before, new ArrayList<>(snapshot));
+    }
+
+    private static Library library(int count) {
+        List<MusicItem> songs = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            songs.add(new MusicItem(id, "Song " + id, "Artist", "Album", 1000, "/music/" + id, 1));
+        }
+        return new Library(songs, new ArrayList<>(), new ArrayList<>());
+    }
+
+    private static long[] ids(int count) {
+        long[] ids = new long[count];
+        for (int id = 0; id < count; id++) {
+            ids[id] = id;
+        }
+        return ids;
+    }
+}
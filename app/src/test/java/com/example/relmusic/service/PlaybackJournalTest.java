@@ -0,0 +1,109 @@
+package com.example.relmusic.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class PlaybackJournalTest {
+
+    private File file;
+    private PlaybackJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("playback", ".session");
+        file.delete();
+        journal = new PlaybackJournal(file);
+    }
+
+    @After
+    public void tearDown() {
+        journal.release();
+        file.delete();
+    }
+
+    @Test
+    public void read_noFile() {
+        assertNull(journal.read());
+    }
+
+    @Test
+    public void read_replaysRecords() throws Exception {
+        journal.writeQueue(new long[]{1, 2, 3}, null, 2, 100, 0);
+        journal.setShuffle(new PlayQueue.Shuffle(42, 1, 3));
+        journal.appendSong(9);
+        journal.checkpoint(9, 500, 1);
+        journal.awaitWrites();
+
+        PlaybackJournal.Session session = journal.read();
+
+        assertArrayEquals(new long[]{1, 2, 3, 9}, session.songIds);
+        assertEquals(42, session.shuffle.seed);
+        assertEquals(1, session.shuffle.firstIndex);
+        assertEquals(3, session.shuffle.count);
+        assertEquals(9, session.songId);
+        assertEquals(500, session.positionMs);
+        assertEquals(1, session.repeatMode);
+    }
+
+    @Test
+    public void read_shuffleOff() throws Exception {
+        journal.writeQueue(new long[]{1, 2}, new PlayQueue.Shuffle(7, 0, 2), 1, 0, 0);
+        journal.setShuffle(null);
+        journal.awaitWrites();
+
+        assertNull(journal.read().shuffle);
+    }
+
+    @Test
+    public void read_ignoresTruncatedCheckpoint() throws Exception {
+        journal.writeQueue(new long[]{1, 2}, null, 1, 100, 0);
+        journal.checkpoint(2, 200, 0);
+        journal.awaitWrites();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 5);
+        }
+
+        PlaybackJournal.Session session = journal.read();
+
+        assertEquals(1, session.songId);
+        assertEquals(100, session.positionMs);
+    }
+
+    @Test
+    public void checkpoint_compactsLongJournals() throws Exception {
+        journal.writeQueue(new long[]{1, 2}, null, 1, 0, 0);
+        for (int i = 1; i <= 5000; i++) {
+            journal.checkpoint(2, i, 0);
+        }
+        journal.awaitWrites();
+
+        assertTrue(file.length() < 2048 * 24 + 1024);
+        assertEquals(5000, journal.read().positionMs);
+    }
+
+    @Test
+    public void read_discardsForeignFile() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        }
+
+        assertNull(journal.read());
+    }
+
+    @Test
+    public void clear_forgetsSession() throws Exception {
+        journal.writeQueue(new long[]{1}, null, 1, 0, 0);
+        journal.clear();
+        journal.checkpoint(1, 10, 0);
+        journal.awaitWrites();
+
+        assertNull(journal.read());
+    }
+}